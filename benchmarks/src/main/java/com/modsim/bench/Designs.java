@@ -0,0 +1,221 @@
+package com.modsim.bench;
+
+import java.util.HashMap;
+
+import com.modsim.Main;
+import com.modsim.modules.BaseModule;
+import com.modsim.modules.BaseModule.AvailableModules;
+import com.modsim.modules.Link;
+import com.modsim.modules.NRAM;
+import com.modsim.modules.parts.Port;
+import com.modsim.operations.OperationStack;
+import com.modsim.simulator.Sim;
+import com.modsim.util.BezierPath;
+import com.modsim.util.BinValue;
+
+/**
+ * Builds synthetic designs of a chosen size for the benchmarks.
+ * Each design is made of identical lanes laid out on a grid, so the module count scales without changing
+ * the shape of the netlist.
+ */
+public final class Designs {
+
+    /**
+     * The design shapes available
+     */
+    public enum Shape {
+        /** A clock stepping a chain of registers, fed back through an adder */
+        REGISTER_CHAIN,
+        /** Registers summed by a tree of adders, the total fed back into the registers */
+        ADDER_TREE,
+        /** A program counter addressing NRAM, with the data accumulated in a register */
+        NRAM_CPU
+    }
+
+    private static final int SPACING = 150;
+    private static final int COLUMNS = 40;
+
+    // NRAM port indices, in the order the module adds them
+    private static final int RAM_CONTROL_IN = 2;
+    private static final int RAM_ADDR_A = 3;
+    private static final int RAM_DATA_OUT_A = 1;
+    private static final int RAM_CONTROL_OUT = 2;
+
+    private int placed = 0;
+
+    private Designs() {}
+
+    /**
+     * Replaces Main.sim with a new simulation holding the given design
+     * @param shape Shape of each lane
+     * @param modules Approximate number of modules to create
+     * @param engine Propagation engine to select
+     * @return The new simulation
+     */
+    public static Sim create(Shape shape, int modules, Sim.Engine engine) {
+        Main.opStack = new OperationStack();
+        Main.sim = new Sim();
+        Main.sim.setEngine(engine);
+
+        Designs d = new Designs();
+        int lane = 0;
+        while (d.placed < modules) {
+            switch (shape) {
+                case REGISTER_CHAIN: d.registerChain(lane); break;
+                case ADDER_TREE: d.adderTree(lane); break;
+                case NRAM_CPU: d.nramCpu(lane); break;
+            }
+            lane++;
+        }
+
+        return Main.sim;
+    }
+
+    private BaseModule add(AvailableModules type) {
+        BaseModule m = (BaseModule) type.getSrcModule().createNew();
+        m.pos.set((placed % COLUMNS) * SPACING, (placed / COLUMNS) * SPACING);
+        Main.sim.addEntity(m);
+        placed++;
+        return m;
+    }
+
+    private BaseModule addSwitch(int value) {
+        BaseModule sw = add(AvailableModules.SWITCH);
+        HashMap<String, String> data = new HashMap<>();
+        data.put("switch_set", BinValue.ofUInt(value).toString());
+        sw.dataIn(data);
+        Main.sim.propagate(sw);
+        return sw;
+    }
+
+    private static void link(Port src, Port targ) {
+        Link l = Link.createLink(src, targ, new BezierPath());
+        if (l == null) {
+            throw new IllegalStateException("Benchmark design contains an invalid link");
+        }
+        Main.sim.addLink(l);
+        Main.sim.propagate(targ.owner);
+    }
+
+    /**
+     * 11 modules: clock, 8 registers, adder, switch.
+     * Registers latch while their clock is high, so alternate registers are clocked by alternate phases (each
+     * phase passed along its half of the chain) to keep the feedback from forming a loop.
+     */
+    private void registerChain(int lane) {
+        BaseModule clock = add(AvailableModules.CLOCK);
+
+        BaseModule[] regs = new BaseModule[8];
+        for (int i = 0; i < regs.length; i++) {
+            regs[i] = add(AvailableModules.REGISTER);
+            if (i < 2) {
+                link(clock.outputs.get(i), regs[i].inputs.get(1));
+            }
+            else {
+                link(regs[i - 2].outputs.get(1), regs[i].inputs.get(1));
+            }
+            if (i > 0) {
+                link(regs[i - 1].outputs.get(0), regs[i].inputs.get(0));
+            }
+        }
+
+        BaseModule adder = add(AvailableModules.ADDSUB);
+        BaseModule sw = addSwitch(lane % 15 + 1);
+        link(regs[regs.length - 1].outputs.get(0), adder.inputs.get(0));
+        link(sw.outputs.get(0), adder.inputs.get(1));
+        link(adder.outputs.get(0), regs[0].inputs.get(0));
+    }
+
+    /**
+     * 22 modules: clock, 8 registers, 7 adders, total register, fanout, 4 switches
+     */
+    private void adderTree(int lane) {
+        BaseModule clock = add(AvailableModules.CLOCK);
+
+        BaseModule[] regs = new BaseModule[8];
+        for (int i = 0; i < regs.length; i++) {
+            regs[i] = add(AvailableModules.REGISTER);
+            link(i == 0 ? clock.outputs.get(0) : regs[i - 1].outputs.get(1), regs[i].inputs.get(1));
+        }
+
+        // Sum pairs, then pairs of sums
+        BaseModule[] level = regs;
+        while (level.length > 1) {
+            BaseModule[] sums = new BaseModule[level.length / 2];
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] = add(AvailableModules.ADDSUB);
+                link(level[2 * i].outputs.get(0), sums[i].inputs.get(0));
+                link(level[2 * i + 1].outputs.get(0), sums[i].inputs.get(1));
+            }
+            level = sums;
+        }
+
+        // Total latched on the other phase, then back into the even registers. Constants go into the odd ones.
+        BaseModule total = add(AvailableModules.REGISTER);
+        link(clock.outputs.get(1), total.inputs.get(1));
+        link(level[0].outputs.get(0), total.inputs.get(0));
+
+        BaseModule fan = add(AvailableModules.FANOUT);
+        link(total.outputs.get(0), fan.inputs.get(0));
+        for (int i = 0; i < regs.length; i += 2) {
+            link(fan.outputs.get(i / 2), regs[i].inputs.get(0));
+            BaseModule sw = addSwitch((lane + i) % 15 + 1);
+            link(sw.outputs.get(0), regs[i + 1].inputs.get(0));
+        }
+    }
+
+    /**
+     * 16 modules: clock, program counter with its incrementer, NRAM, accumulator, and a register chain
+     * clocked from the accumulator's control output
+     */
+    private void nramCpu(int lane) {
+        BaseModule clock = add(AvailableModules.CLOCK);
+
+        // Program counter: pc <- pc + 1, the next value held on the second phase
+        BaseModule pc = add(AvailableModules.REGISTER);
+        BaseModule pcFan = add(AvailableModules.FANOUT);
+        BaseModule inc = add(AvailableModules.ADDSUB);
+        BaseModule one = addSwitch(1);
+        BaseModule pcNext = add(AvailableModules.REGISTER);
+        link(clock.outputs.get(0), pc.inputs.get(1));
+        link(pc.outputs.get(0), pcFan.inputs.get(0));
+        link(pcFan.outputs.get(0), inc.inputs.get(0));
+        link(one.outputs.get(0), inc.inputs.get(1));
+        link(clock.outputs.get(1), pcNext.inputs.get(1));
+        link(inc.outputs.get(0), pcNext.inputs.get(0));
+        link(pcNext.outputs.get(0), pc.inputs.get(0));
+
+        // Memory, preloaded with a pattern
+        NRAM ram = (NRAM) add(AvailableModules.RAM);
+        for (int a = 0; a < 16; a++) {
+            ram.write(a, BinValue.ofUInt(a + lane), BinValue.ofUInt(a ^ lane));
+        }
+        link(pcFan.outputs.get(1), ram.inputs.get(RAM_ADDR_A));
+        link(clock.outputs.get(1), ram.inputs.get(RAM_CONTROL_IN));
+
+        // Accumulator: acc <- acc + mem[pc], the sum held on the first phase
+        BaseModule acc = add(AvailableModules.REGISTER);
+        BaseModule accFan = add(AvailableModules.FANOUT);
+        BaseModule sum = add(AvailableModules.ADDSUB);
+        BaseModule accNext = add(AvailableModules.REGISTER);
+        link(ram.outputs.get(RAM_DATA_OUT_A), sum.inputs.get(0));
+        link(acc.outputs.get(0), accFan.inputs.get(0));
+        link(accFan.outputs.get(0), sum.inputs.get(1));
+        link(pc.outputs.get(1), accNext.inputs.get(1));
+        link(sum.outputs.get(0), accNext.inputs.get(0));
+        link(accNext.outputs.get(0), acc.inputs.get(0));
+        link(ram.outputs.get(RAM_CONTROL_OUT), acc.inputs.get(1));
+
+        // Trailing registers shift the accumulator along, keeping the NRAM count (and memory use) down
+        BaseModule prev = acc;
+        Port data = accFan.outputs.get(1);
+        for (int i = 0; i < 4; i++) {
+            BaseModule r = add(AvailableModules.REGISTER);
+            link(prev.outputs.get(1), r.inputs.get(1));
+            link(data, r.inputs.get(0));
+            data = r.outputs.get(0);
+            prev = r;
+        }
+    }
+
+}
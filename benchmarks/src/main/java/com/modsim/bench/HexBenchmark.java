@@ -0,0 +1,73 @@
+package com.modsim.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.modsim.Main;
+import com.modsim.modules.BaseModule;
+import com.modsim.modules.BaseModule.AvailableModules;
+import com.modsim.modules.NRAM;
+import com.modsim.operations.OperationStack;
+import com.modsim.simulator.Sim;
+import com.modsim.util.BinValue;
+import com.modsim.util.HexReader;
+import com.modsim.util.HexWriter;
+
+/**
+ * Time to encode and decode a full NRAM in the hex format
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g", "-Djava.awt.headless=true"})
+public class HexBenchmark {
+
+    /**
+     * How the memory is filled: all zero, or every address holding a different value
+     */
+    @Param({"ZERO", "PATTERN"})
+    public String contents;
+
+    private NRAM ram;
+    private String encoded;
+
+    @Setup
+    public void setup() {
+        Main.opStack = new OperationStack();
+        Main.sim = new Sim();
+        ram = (NRAM) AvailableModules.RAM.getSrcModule().createNew();
+        Main.sim.addEntity(ram);
+
+        if (contents.equals("PATTERN")) {
+            for (int a = 0; a < 65536; a++) {
+                ram.write(a, BinValue.ofUInt(a), BinValue.ofUInt(a >> 4));
+            }
+        }
+        encoded = HexWriter.hexString(ram, false);
+    }
+
+    @Benchmark
+    public String write() {
+        return HexWriter.hexString(ram, false);
+    }
+
+    @Benchmark
+    public BaseModule read() {
+        HexReader.readString(encoded, ram);
+        return ram;
+    }
+
+}
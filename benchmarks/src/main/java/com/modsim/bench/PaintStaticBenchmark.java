@@ -0,0 +1,61 @@
+package com.modsim.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.modsim.Main;
+import com.modsim.gui.GUI;
+import com.modsim.gui.view.View;
+import com.modsim.simulator.Sim;
+
+/**
+ * Time to redraw the static layer of the view (grid, module bodies and links) into its off-screen image
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g", "-Djava.awt.headless=true"})
+public class PaintStaticBenchmark {
+
+    @Param({"REGISTER_CHAIN", "NRAM_CPU"})
+    public Designs.Shape design;
+
+    @Param({"100", "1000"})
+    public int modules;
+
+    private View view;
+
+    @Setup
+    public void setup() {
+        Designs.create(design, modules, Sim.Engine.EVENT_DRIVEN);
+
+        // A view that's never shown: just enough GUI for the modules to draw into
+        Main.ui = new GUI();
+        view = new View();
+        Main.ui.view = view;
+        view.setSize(1280, 800);
+        view.zoom = 0.25;
+        view.calcXForm();
+    }
+
+    @Benchmark
+    public View paint() {
+        view.flagStaticRedraw();
+        view.paintStatic();
+        return view;
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.modsim.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.modsim.simulator.Sim;
+
+/**
+ * Clock ticks per second for each design shape, size and propagation engine
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g", "-Djava.awt.headless=true"})
+public class SimStepBenchmark {
+
+    @Param({"REGISTER_CHAIN", "ADDER_TREE", "NRAM_CPU"})
+    public Designs.Shape design;
+
+    @Param({"100", "1000", "10000"})
+    public int modules;
+
+    @Param({"EVENT_DRIVEN", "COMPILED", "PARALLEL"})
+    public Sim.Engine engine;
+
+    private Sim sim;
+
+    @Setup
+    public void setup() {
+        sim = Designs.create(design, modules, engine);
+    }
+
+    @Benchmark
+    public void step() {
+        sim.step();
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.modsim.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.modsim.simulator.Sim;
+import com.modsim.util.XMLReader;
+import com.modsim.util.XMLWriter;
+
+/**
+ * Time to save and load a design
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g", "-Djava.awt.headless=true"})
+public class XmlRoundTripBenchmark {
+
+    @Param({"REGISTER_CHAIN", "NRAM_CPU"})
+    public Designs.Shape design;
+
+    @Param({"100", "1000", "10000"})
+    public int modules;
+
+    private File saved;
+    private File scratch;
+
+    @Setup
+    public void setup() throws IOException {
+        saved = File.createTempFile("modsim-bench", ".modsim");
+        scratch = File.createTempFile("modsim-bench", ".modsim");
+
+        Designs.create(design, modules, Sim.Engine.EVENT_DRIVEN);
+        XMLWriter.writeFile(saved);
+    }
+
+    @TearDown
+    public void tearDown() {
+        saved.delete();
+        scratch.delete();
+    }
+
+    @Benchmark
+    public void write() {
+        XMLWriter.writeFile(scratch);
+    }
+
+    @Benchmark
+    public int read() throws Exception {
+        return XMLReader.loadFile(saved);
+    }
+
+}
@@ -0,0 +1,147 @@
+package com.modsim;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.modsim.modules.BaseModule;
+import com.modsim.modules.BaseModule.AvailableModules;
+import com.modsim.modules.NRAM;
+import com.modsim.modules.Register;
+import com.modsim.operations.OperationStack;
+import com.modsim.simulator.Sim;
+import com.modsim.util.HexWriter;
+import com.modsim.util.XMLReader;
+
+/**
+ * Runs designs without the GUI, for batch testing.
+ * Each design is loaded, stepped for the given number of clock ticks as fast as possible, and its final
+ * register and NRAM state reported along with the simulation rate.
+ *
+ * Usage: HeadlessRunner [-engine event|compiled|parallel] ticks design.modsim [design.modsim ...]
+ * (also available as Main --batch ...)
+ *
+ * Exits with 0 on success, 1 if a design couldn't be loaded, or 2 if a runtime loop halted a simulation.
+ */
+public class HeadlessRunner {
+
+    // Steps run per hold of the sim lock
+    private static final int BATCH = 4096;
+
+    private static final String USAGE =
+            "Usage: HeadlessRunner [-engine event|compiled|parallel] ticks design.modsim [design.modsim ...]";
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out));
+    }
+
+    /**
+     * Runs the designs named on the command line
+     * @param args Command line arguments
+     * @param out Stream to report to
+     * @return Exit status
+     */
+    public static int run(String[] args, PrintStream out) {
+        System.setProperty("java.awt.headless", "true");
+
+        Sim.Engine engine = Sim.Engine.COMPILED;
+        List<String> rest = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-engine") && i + 1 < args.length) {
+                switch (args[++i]) {
+                    case "event": engine = Sim.Engine.EVENT_DRIVEN; break;
+                    case "compiled": engine = Sim.Engine.COMPILED; break;
+                    case "parallel": engine = Sim.Engine.PARALLEL; break;
+                    default:
+                        System.err.println(USAGE);
+                        return 1;
+                }
+            }
+            else {
+                rest.add(args[i]);
+            }
+        }
+
+        long ticks;
+        try {
+            ticks = rest.size() >= 2 ? Long.parseLong(rest.get(0)) : -1;
+        }
+        catch (NumberFormatException e) {
+            ticks = -1;
+        }
+        if (ticks < 0) {
+            System.err.println(USAGE);
+            return 1;
+        }
+
+        Main.opStack = new OperationStack();
+        Main.sim = new Sim();
+        Main.sim.setEngine(engine);
+
+        int status = 0;
+        for (String path : rest.subList(1, rest.size())) {
+            status = Math.max(status, runDesign(new File(path), ticks, out));
+        }
+
+        return status;
+    }
+
+    /**
+     * Loads, runs and reports on a single design
+     */
+    private static int runDesign(File file, long ticks, PrintStream out) {
+        out.println("design: " + file.getPath());
+
+        try {
+            int badLinks = XMLReader.loadFile(file);
+            if (badLinks != 0) {
+                out.println("warning: " + badLinks + " bad links were ignored");
+            }
+        }
+        catch (Exception e) {
+            out.println("error: could not load design: " + e.getMessage());
+            return 1;
+        }
+
+        // A runtime loop clears the running flag, the same as in the GUI
+        Sim sim = Main.sim;
+        sim.running = true;
+
+        long start = System.nanoTime();
+        long done = 0;
+        while (done < ticks && sim.running) {
+            done += sim.stepBatch((int) Math.min(ticks - done, BATCH));
+        }
+        long elapsed = System.nanoTime() - start;
+
+        boolean halted = !sim.running;
+        sim.running = false;
+
+        double seconds = elapsed / 1e9;
+        out.printf("ticks: %d%s%n", done, halted ? " (halted: runtime loop)" : "");
+        out.printf("time: %.3f s (%.0f ticks/s)%n", seconds, seconds > 0 ? done / seconds : 0.0);
+
+        synchronized (sim) {
+            for (BaseModule m : sim.getModules()) {
+                if (m.getModType() == AvailableModules.REGISTER) {
+                    out.println("register " + describe(m) + ": " + ((Register) m).getStoredVal());
+                }
+            }
+            for (BaseModule m : sim.getModules()) {
+                if (m.getModType() == AvailableModules.RAM) {
+                    out.println("nram " + describe(m) + ": " + HexWriter.hexString((NRAM) m, false).trim());
+                }
+            }
+        }
+        out.println();
+
+        return halted ? 2 : 0;
+    }
+
+    private static String describe(BaseModule m) {
+        return "#" + m.getID() + (m.label.isEmpty() ? "" : " \"" + m.label + "\"");
+    }
+
+}
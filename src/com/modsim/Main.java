@@ -7,6 +7,7 @@ import com.modsim.util.ModuleClipboard;
 import com.modsim.util.Selection;
 
 import javax.swing.*;
+import java.util.Arrays;
 
 /**
  * Just does initialisation for the program
@@ -27,6 +28,12 @@ public class Main {
 	 * @param args System argument
 	 */
 	public static void main(String[] args) {
+		// Headless batch runs skip the GUI entirely
+		if (args.length > 0 && args[0].equals("--batch")) {
+			HeadlessRunner.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
 		// Set up GUI thread
 		SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
@@ -12,15 +12,19 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseWheelEvent;
 import java.io.File;
 import java.io.FilenameFilter;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.prefs.Preferences;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import com.modsim.Main;
-import com.modsim.util.BinData;
+import com.modsim.modules.AccessCounter;
+import com.modsim.util.BinReader;
+import com.modsim.util.BinWriter;
 import com.modsim.util.HexReader;
 import com.modsim.util.HexWriter;
+import com.modsim.util.TraceWriter;
 import com.modsim.modules.NRAM;
 import com.modsim.util.XMLReader;
 
@@ -30,12 +34,6 @@ public class MemEdit {
 
     public final JDialog frame = new JDialog(Main.ui.frame, "Memory Viewer");
     private final JMenuBar menu = new JMenuBar();
-    private final FilenameFilter hexFilter = new FilenameFilter() {
-        @Override
-        public boolean accept(File dir, String name) {
-            return name.endsWith(".hex");
-        }
-    };
     private final JScrollBar scroll = new JScrollBar(JScrollBar.VERTICAL);
     private final JTextField jumpAdr = new JTextField();
 
@@ -43,11 +41,25 @@ public class MemEdit {
 
     public int updAdr = -1;
 
+    // Pages changed since the last update, taken from the module
+    private final long[] dirtyPages = new long[(NRAM.MAX_ADDR + 1) / NRAM.PAGE_SIZE / Long.SIZE];
+
+    // Changes reported by the module since the last refresh, and the latest address written. Drained by the
+    // refresh timer at the view's refresh rate, so the sim thread never waits on the EDT.
+    private final AtomicBoolean changed = new AtomicBoolean(false);
+    private volatile int changedAdr = -1;
+    private final Timer refreshTimer;
+
+    private final JCheckBoxMenuItem traceItem = new JCheckBoxMenuItem("Count Accesses");
+    private long heatTotal = -1;
+
     /**
      * Creates the memory editor. 'show()' must be called before it becomes visible.
      */
     public MemEdit() {
         addFileMenu();
+        addViewMenu();
+        addTraceMenu();
         frame.setJMenuBar(menu);
 
         JPanel adrStrip = new JPanel();
@@ -106,6 +118,46 @@ public class MemEdit {
         });
 
         frame.add(memView);
+
+        refreshTimer = new Timer(refreshDelay(), new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                refreshTimer.setDelay(refreshDelay());
+                if (changed.getAndSet(false)) {
+                    updAdr = changedAdr;
+                    update();
+                }
+
+                // Reads change the heat map without changing memory
+                AccessCounter counts = nram.getAccessCounts();
+                if (memView.getShowHeat() && counts != null && counts.getTotal() != heatTotal) {
+                    heatTotal = counts.getTotal();
+                    memView.redrawAll();
+                }
+            }
+        });
+
+        frame.addComponentListener(new ComponentAdapter() {
+            public void componentHidden(ComponentEvent e) {
+                refreshTimer.stop();
+            }
+        });
+    }
+
+    /**
+     * @return Time between refreshes, in milliseconds
+     */
+    private static int refreshDelay() {
+        return 1000 / Main.ui.view.getDynamicRefreshRate();
+    }
+
+    /**
+     * Notes a change to the module's memory. Safe to call from any thread, and cheap enough to call on every
+     * write: the view catches up on the next refresh, however many changes there have been since the last.
+     * @param adr The address written
+     */
+    public void memoryChanged(int adr) {
+        changedAdr = adr;
+        changed.set(true);
     }
 
     /**
@@ -118,23 +170,42 @@ public class MemEdit {
         frame.setVisible(true);
         this.nram = nram;
 
+        traceItem.setSelected(nram.isTracing());
+        memView.redrawAll();
         update();
+        refreshTimer.start();
     }
 
     /**
      * Hides the window
      */
     public void close() {
+        refreshTimer.stop();
         frame.setVisible(false);
     }
 
     /**
-     * Updates the view of the memory contents
+     * Updates the view of the memory contents. Only the pages changed since the last update are redrawn, so any
+     * number of writes in between cost one repaint.
      */
     public void update() {
         frame.setTitle("NRAM " + nram.label);
+
+        // Move the highlight
+        int oldAdr = memView.getUpdated();
         memView.setUpdated(updAdr);
-        memView.repaint();
+        memView.repaintRange(oldAdr, oldAdr);
+        memView.repaintRange(updAdr, updAdr);
+
+        if (nram.takeDirtyPages(dirtyPages)) {
+            for (int i = 0; i < dirtyPages.length; i++) {
+                for (long d = dirtyPages[i]; d != 0; d &= d - 1) {
+                    int page = i * Long.SIZE + Long.numberOfTrailingZeros(d);
+                    memView.repaintRange(page * NRAM.PAGE_SIZE, (page + 1) * NRAM.PAGE_SIZE - 1);
+                }
+                dirtyPages[i] = 0;
+            }
+        }
     }
 
     /**
@@ -143,8 +214,43 @@ public class MemEdit {
      * @return The stored byte
      */
     public int getByte(int adr) {
-        BinData[] bits = nram.read(adr);
-        return (bits[1].getUInt() << 4) | (bits[0].getUInt());
+        return nram.getByte(adr);
+    }
+
+    /**
+     * Gets a range of memory from the attached NRAM module
+     * @param adr First address to fetch
+     * @param dst Array to fetch into
+     * @param off Offset into dst
+     * @param len Number of bytes
+     */
+    public void getBytes(int adr, byte[] dst, int off, int len) {
+        nram.getBytes(adr, dst, off, len);
+    }
+
+    /**
+     * Gets the access counts of the attached NRAM module
+     * @return The counts, or null if they've never been recorded
+     */
+    public AccessCounter getAccessCounts() {
+        return nram.getAccessCounts();
+    }
+
+    /**
+     * Gets the generation in which a page of the attached NRAM module last changed
+     * @param page Page index
+     */
+    public int getPageGeneration(int page) {
+        return nram.getPageGeneration(page);
+    }
+
+    /**
+     * Updates the view after the whole of memory has been replaced, with nothing highlighted
+     */
+    private void reload() {
+        changed.set(false);
+        updAdr = -1;
+        update();
     }
 
     /**
@@ -152,7 +258,7 @@ public class MemEdit {
      * @param adr Address to jump to
      */
     public void jumpTo(int adr) {
-        scroll.setValue(adr / memView.getCellsPerRow());
+        scroll.setValue(adr / memView.getBytesPerRow());
     }
 
     /**
@@ -167,42 +273,10 @@ public class MemEdit {
         menuItem.setToolTipText("Load a hex data file into the module (replaces the current contents)");
         menuItem.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                Preferences prefs = Preferences.userNodeForPackage(MemEdit.class);
-                FileDialog fd = new FileDialog(frame, "Load Hex-encoded data", FileDialog.LOAD);
-
-                fd.setFilenameFilter(hexFilter);
-                fd.setFile("*.hex"); // FilenameFilter doesn't work on Windows
-
-                fd.setDirectory(prefs.get("hex_fileDir", ""));
-                fd.setVisible(true);
-
-                if (fd.getFile() != null) {
-                    String path = fd.getDirectory() + fd.getFile();
-
-                    // Loop till we get a valid input
-                    while (!path.endsWith(".hex")) {
-                        int res = JOptionPane.showConfirmDialog(frame, "Data load: Warning",
-                                "That doesn't appear to be a hex file. Try and open anyway?",
-                                JOptionPane.YES_NO_CANCEL_OPTION);
-
-                        if (res == JOptionPane.YES_OPTION) break;
-                        else if (res == JOptionPane.NO_OPTION) {
-                            fd.setFile("*.hex");
-                            fd.setVisible(true);
-
-                            if (fd.getFile() == null) return;
-                            path = fd.getDirectory() + fd.getFile();
-                        }
-                        else {
-                            return;
-                        }
-                    }
-
-                    prefs.put("hex_fileDir", fd.getDirectory());
-                    File file = new File(path);
+                File file = chooseLoadFile("Load Hex-encoded data", "hex");
+                if (file != null) {
                     HexReader.readFile(file, nram);
-                    updAdr = -1;
-                    update();
+                    reload();
                 }
             }
         });
@@ -213,29 +287,36 @@ public class MemEdit {
         menuItem.setToolTipText("Saves the current NRAM contents to a hex data file");
         menuItem.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                Preferences prefs = Preferences.userNodeForPackage(MemEdit.class);
-                FileDialog fd = new FileDialog(frame, "Save Hex-encoded data", FileDialog.SAVE);
-                fd.setFilenameFilter(hexFilter);
-                // can just append .hex if the user doesn't
-                if (Main.sim.filePath.isEmpty()) {
-                    fd.setFile("*.hex");
-                } else {
-                    int ind = Main.sim.filePath.lastIndexOf('/');
-                    fd.setFile(Main.sim.filePath.substring(ind + 1));
+                File file = chooseSaveFile("Save Hex-encoded data", "hex");
+                if (file != null) {
+                    HexWriter.writeFile(file, nram);
                 }
+            }
+        });
+        file.add(menuItem);
 
-                fd.setDirectory(prefs.get("hex_fileDir", ""));
-                fd.setVisible(true);
-
-                if (fd.getFile() != null) {
-                    String path = fd.getDirectory() + fd.getFile();
+        file.addSeparator();
 
-                    // Is the file being created with the correct extension?
-                    if (!path.endsWith(".hex")) {
-                        path = path + ".hex";
-                    }
+        menuItem = new JMenuItem("Load Binary Image");
+        menuItem.setToolTipText("Load a raw binary file into the module (replaces the current contents)");
+        menuItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                File file = chooseLoadFile("Load binary image", "bin");
+                if (file != null) {
+                    BinReader.readFile(file, nram);
+                    reload();
+                }
+            }
+        });
+        file.add(menuItem);
 
-                    HexWriter.writeFile(new File(path), nram);
+        menuItem = new JMenuItem("Save Binary Image");
+        menuItem.setToolTipText("Saves the current NRAM contents to a raw binary file");
+        menuItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                File file = chooseSaveFile("Save binary image", "bin");
+                if (file != null) {
+                    BinWriter.writeFile(file, nram);
                 }
             }
         });
@@ -244,6 +325,237 @@ public class MemEdit {
         menu.add(file);
     }
 
+    /**
+     * Fills the view menu
+     */
+    private void addViewMenu() {
+        JMenu view = new JMenu("View");
+        view.setMnemonic(KeyEvent.VK_V);
+
+        ButtonGroup modes = new ButtonGroup();
+        JRadioButtonMenuItem bytes = new JRadioButtonMenuItem("Bytes", true);
+        bytes.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                relayout(MemView.Mode.BYTES, memView.getShowAscii());
+            }
+        });
+        modes.add(bytes);
+        view.add(bytes);
+
+        JRadioButtonMenuItem words = new JRadioButtonMenuItem("Words (16-bit)");
+        words.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                relayout(MemView.Mode.WORDS, memView.getShowAscii());
+            }
+        });
+        modes.add(words);
+        view.add(words);
+
+        view.addSeparator();
+
+        final JCheckBoxMenuItem ascii = new JCheckBoxMenuItem("ASCII Column");
+        ascii.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                relayout(memView.getMode(), ascii.isSelected());
+            }
+        });
+        view.add(ascii);
+
+        menu.add(view);
+    }
+
+    /**
+     * Fills the trace menu
+     */
+    private void addTraceMenu() {
+        JMenu trace = new JMenu("Trace");
+        trace.setMnemonic(KeyEvent.VK_T);
+
+        traceItem.setToolTipText("Count how often each address is read and written while the simulation runs");
+        traceItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                nram.setTracing(traceItem.isSelected());
+            }
+        });
+        trace.add(traceItem);
+
+        final JCheckBoxMenuItem heatItem = new JCheckBoxMenuItem("Heat Map");
+        heatItem.setToolTipText("Shade each cell by how often it has been accessed");
+        heatItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                memView.setShowHeat(heatItem.isSelected());
+            }
+        });
+        trace.add(heatItem);
+
+        JMenuItem menuItem = new JMenuItem("Hottest Addresses");
+        menuItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                showHottest();
+            }
+        });
+        trace.add(menuItem);
+
+        menuItem = new JMenuItem("Reset Counts");
+        menuItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                AccessCounter counts = nram.getAccessCounts();
+                if (counts != null) {
+                    synchronized (Main.sim.lock) {
+                        counts.clear();
+                    }
+                    memView.redrawAll();
+                }
+            }
+        });
+        trace.add(menuItem);
+
+        trace.addSeparator();
+
+        menuItem = new JMenuItem("Export Counts (CSV)");
+        menuItem.setToolTipText("Saves the read and write counts of each accessed address as CSV");
+        menuItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                File file = chooseSaveFile("Export access counts", "csv");
+                if (file != null) {
+                    TraceWriter.writeFile(file, nram.getAccessCounts(), true);
+                }
+            }
+        });
+        trace.add(menuItem);
+
+        menuItem = new JMenuItem("Export Counts (Binary)");
+        menuItem.setToolTipText("Saves the read and write counts of every address as 64-bit big-endian integers");
+        menuItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                File file = chooseSaveFile("Export access counts", "bin");
+                if (file != null) {
+                    TraceWriter.writeFile(file, nram.getAccessCounts(), false);
+                }
+            }
+        });
+        trace.add(menuItem);
+
+        menu.add(trace);
+    }
+
+    /**
+     * Lists the most accessed addresses, and puts the hottest in view
+     */
+    private void showHottest() {
+        AccessCounter counts = nram.getAccessCounts();
+        int[] hottest = counts != null ? counts.getHottest(10) : new int[0];
+        if (hottest.length == 0) {
+            JOptionPane.showMessageDialog(frame, "No accesses counted yet - turn on 'Count Accesses' and run.");
+            return;
+        }
+
+        StringBuilder msg = new StringBuilder("Address    Reads    Writes\n");
+        for (int adr : hottest) {
+            msg.append(String.format("0x%04X    %d    %d%n", adr, counts.getReads(adr), counts.getWrites(adr)));
+        }
+
+        jumpTo(hottest[0]);
+        JOptionPane.showMessageDialog(frame, msg.toString(), "Hottest Addresses", JOptionPane.PLAIN_MESSAGE);
+    }
+
+    /**
+     * Changes the view's layout, keeping the same addresses in view
+     */
+    private void relayout(MemView.Mode mode, boolean showAscii) {
+        int top = scroll.getValue() * memView.getBytesPerRow();
+
+        memView.setMode(mode);
+        memView.setShowAscii(showAscii);
+
+        scroll.setMaximum(memView.getRowCount());
+        jumpTo(top);
+    }
+
+    /**
+     * Asks the user for a data file to load
+     * @param title Dialog title
+     * @param ext Expected file extension, without the dot
+     * @return The file, or null if cancelled
+     */
+    private File chooseLoadFile(String title, final String ext) {
+        Preferences prefs = Preferences.userNodeForPackage(MemEdit.class);
+        FileDialog fd = new FileDialog(frame, title, FileDialog.LOAD);
+
+        fd.setFilenameFilter(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith("." + ext);
+            }
+        });
+        fd.setFile("*." + ext); // FilenameFilter doesn't work on Windows
+
+        fd.setDirectory(prefs.get("hex_fileDir", ""));
+        fd.setVisible(true);
+
+        if (fd.getFile() == null) return null;
+        String path = fd.getDirectory() + fd.getFile();
+
+        // Loop till we get a valid input
+        while (!path.endsWith("." + ext)) {
+            int res = JOptionPane.showConfirmDialog(frame, "Data load: Warning",
+                    "That doesn't appear to be a " + ext + " file. Try and open anyway?",
+                    JOptionPane.YES_NO_CANCEL_OPTION);
+
+            if (res == JOptionPane.YES_OPTION) break;
+            else if (res == JOptionPane.NO_OPTION) {
+                fd.setFile("*." + ext);
+                fd.setVisible(true);
+
+                if (fd.getFile() == null) return null;
+                path = fd.getDirectory() + fd.getFile();
+            }
+            else {
+                return null;
+            }
+        }
+
+        prefs.put("hex_fileDir", fd.getDirectory());
+        return new File(path);
+    }
+
+    /**
+     * Asks the user for a data file to save to
+     * @param title Dialog title
+     * @param ext File extension, without the dot - appended if the user doesn't give it
+     * @return The file, or null if cancelled
+     */
+    private File chooseSaveFile(String title, final String ext) {
+        Preferences prefs = Preferences.userNodeForPackage(MemEdit.class);
+        FileDialog fd = new FileDialog(frame, title, FileDialog.SAVE);
+        fd.setFilenameFilter(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith("." + ext);
+            }
+        });
+        // can just append the extension if the user doesn't
+        if (Main.sim.filePath.isEmpty()) {
+            fd.setFile("*." + ext);
+        } else {
+            int ind = Main.sim.filePath.lastIndexOf('/');
+            fd.setFile(Main.sim.filePath.substring(ind + 1));
+        }
+
+        fd.setDirectory(prefs.get("hex_fileDir", ""));
+        fd.setVisible(true);
+
+        if (fd.getFile() == null) return null;
+        String path = fd.getDirectory() + fd.getFile();
+
+        // Is the file being created with the correct extension?
+        if (!path.endsWith("." + ext)) {
+            path = path + "." + ext;
+        }
+
+        return new File(path);
+    }
+
     class ScrollAdjustmentListener implements AdjustmentListener {
         public void adjustmentValueChanged(AdjustmentEvent e) {
             memView.setOffset(e.getValue());
@@ -1,28 +1,96 @@
 package com.modsim.gui;
 
 import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
 
 import javax.swing.JPanel;
 
+import com.modsim.modules.AccessCounter;
 import com.modsim.modules.NRAM;
 import com.modsim.res.Colors;
 
+/**
+ * Scrolling hex view of an NRAM module's contents.
+ * Only the visible rows are drawn, into a back buffer from which repaints are blitted. Each row is redrawn only
+ * when the memory pages it shows have changed (or it has scrolled, or the highlight has moved), and text is
+ * drawn from glyphs rendered once for each byte value rather than formatted per cell.
+ */
 public class MemView extends JPanel {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * How cells are grouped
+     */
+    public enum Mode {
+        BYTES(1, 40),
+        WORDS(2, 64); // 16-bit, little-endian
+
+        final int bytesPerCell;
+        final int minCellW;
+
+        Mode(int bytesPerCell, int minCellW) {
+            this.bytesPerCell = bytesPerCell;
+            this.minCellW = minCellW;
+        }
+    }
+
     private static final int adrW = 70;
-    private static final int minCellW = 40;
     private static final int rowH = 20;
+    private static final int baseline = 14;
+    private static final int asciiPad = 10;
+
+    private static final Color evenRow = new Color(238, 238, 238);
+    private static final Color oddRow = new Color(230, 230, 230);
+    private static final char[] hexDigits = "0123456789ABCDEF".toCharArray();
+
+    // Heat map shades, from least to most accessed
+    private static final Color[] heatColors = new Color[16];
+
+    static {
+        Color cool = new Color(255, 236, 160), hot = new Color(235, 70, 40);
+        for (int i = 0; i < heatColors.length; i++) {
+            float t = (float) i / (heatColors.length - 1);
+            heatColors[i] = new Color(
+                    (int) (cool.getRed() + t * (hot.getRed() - cool.getRed())),
+                    (int) (cool.getGreen() + t * (hot.getGreen() - cool.getGreen())),
+                    (int) (cool.getBlue() + t * (hot.getBlue() - cool.getBlue())));
+        }
+    }
 
     private final MemEdit editor;
 
     private int updAdr = -1;
     private int offset = 0;
 
+    private Mode mode = Mode.BYTES;
+    private boolean showAscii = false;
+    private boolean showHeat = false;
+
+    // Access counts for the heat map while painting, and the highest of them (-1 until needed)
+    private AccessCounter heat = null;
+    private long heatMax = -1;
+
+    // Glyphs: hex byte values in the normal and highlighted colours, address digits, and ASCII characters
+    private BufferedImage[] hexGlyphs = null;
+    private BufferedImage[] hexGlyphsHl = null;
+    private BufferedImage[] adrGlyphs = null;
+    private BufferedImage[] asciiGlyphs = null;
+    private int hexGlyphW, adrGlyphW, asciiGlyphW;
+
+    // Back buffer, and what each visible row slot currently holds in it (start address -1 if nothing)
+    private BufferedImage buffer = null;
+    private int[] rowAdr = new int[0];
+    private int[] rowHl = new int[0];
+    private int[] rowGenFirst = new int[0];
+    private int[] rowGenLast = new int[0];
+    private final byte[] rowData = new byte[NRAM.PAGE_SIZE];
+
     public MemView(MemEdit editor) {
         this.editor = editor;
         this.setFocusable(true);
@@ -36,92 +104,300 @@ public class MemView extends JPanel {
         updAdr = adr;
     }
 
+    public int getUpdated() {
+        return updAdr;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Sets how cells are grouped. The caller should update the scroll range, as the row count changes.
+     */
+    public void setMode(Mode newMode) {
+        mode = newMode;
+        invalidateRows();
+        repaint();
+    }
+
+    public boolean getShowAscii() {
+        return showAscii;
+    }
+
+    /**
+     * Sets whether rows end with their bytes as ASCII characters. The caller should update the scroll range, as
+     * the row count changes.
+     */
+    public void setShowAscii(boolean show) {
+        showAscii = show;
+        invalidateRows();
+        repaint();
+    }
+
+    public boolean getShowHeat() {
+        return showHeat;
+    }
+
+    /**
+     * Sets whether cells are shaded by how often they've been accessed, when the module's accesses are counted.
+     * The counts change without the memory changing, so the caller should call redrawAll() as they do.
+     */
+    public void setShowHeat(boolean show) {
+        showHeat = show;
+        redrawAll();
+    }
+
+    /**
+     * Schedules a repaint of the rows showing a range of addresses, if any are in view
+     * @param from First address
+     * @param to Last address (inclusive)
+     */
+    public void repaintRange(int from, int to) {
+        if (from < 0 || to < from) return;
+
+        int bytes = getBytesPerRow();
+        int first = Math.max(from / bytes, offset);
+        int last = Math.min(to / bytes, offset + getHeight()/rowH);
+        if (first > last) return;
+
+        repaint(0, (first - offset) * rowH, getWidth(), (last - first + 1) * rowH);
+    }
+
     @Override
-    public void paintComponent(Graphics oldG) {
-        Graphics2D g = (Graphics2D) oldG;
+    public void paintComponent(Graphics g) {
+        prepare();
 
-        g.setColor(Color.WHITE);
-        g.fillRect(0, 0, getWidth(), getHeight());
+        // Bring the visible rows up to date, then copy out whatever's being repainted
+        Graphics2D bg = buffer.createGraphics();
+        int bytes = getBytesPerRow();
+        heat = showHeat ? editor.getAccessCounts() : null;
+        heatMax = -1;
+
+        for (int slot = 0; slot < rowAdr.length; slot++) {
+            int startAdr = (offset + slot) * bytes;
+            if (startAdr > NRAM.MAX_ADDR) startAdr = -1;
 
-        int rowsToDraw = getHeight()/rowH + 1;
+            int endAdr = Math.min(startAdr + bytes, NRAM.MAX_ADDR + 1) - 1;
+            int hl = (startAdr >= 0 && updAdr >= startAdr && updAdr <= endAdr) ? updAdr : -1;
+            int genFirst = startAdr >= 0 ? editor.getPageGeneration(startAdr / NRAM.PAGE_SIZE) : 0;
+            int genLast = startAdr >= 0 ? editor.getPageGeneration(endAdr / NRAM.PAGE_SIZE) : 0;
 
-        for (int i = offset; i < offset+rowsToDraw; i++) {
-            drawRow(g, i, i*getCellsPerRow());
-            g.translate(0, rowH);
+            if (rowAdr[slot] != startAdr || rowHl[slot] != hl
+                    || rowGenFirst[slot] != genFirst || rowGenLast[slot] != genLast) {
+                rowAdr[slot] = startAdr;
+                rowHl[slot] = hl;
+                rowGenFirst[slot] = genFirst;
+                rowGenLast[slot] = genLast;
+
+                drawRow(bg, slot, offset + slot, startAdr, endAdr);
+            }
         }
+        bg.dispose();
+
+        g.drawImage(buffer, 0, 0, null);
     }
 
     /**
-     * @return The number of cells per row
+     * @return The number of addresses shown per row
      */
-    public int getCellsPerRow() {
-        int w = getWidth();
-        int available = w - adrW;
-        return Math.max(1, available / minCellW);
+    public int getBytesPerRow() {
+        if (hexGlyphs == null) {
+            createGlyphs();
+        }
+
+        int perCell = mode.bytesPerCell;
+        int cellW = mode.minCellW + (showAscii ? perCell * asciiGlyphW : 0);
+        int available = getWidth() - adrW - (showAscii ? asciiPad : 0);
+        int cells = Math.max(1, available / cellW);
+
+        // Rows are kept within two pages so that their changes are cheap to check
+        return Math.min(cells * perCell, NRAM.PAGE_SIZE);
     }
 
     /**
      * @return The full row count for all addresses in memory
      */
     public int getRowCount() {
-        int cells = NRAM.MAX_ADDR;
-        return cells/getCellsPerRow();
+        int bytes = getBytesPerRow();
+        return (NRAM.MAX_ADDR + bytes) / bytes;
+    }
+
+    /**
+     * Redraws the whole view, e.g. when it's showing a different module
+     */
+    public void redrawAll() {
+        invalidateRows();
+        repaint();
+    }
+
+    /**
+     * Marks every row as needing to be redrawn
+     */
+    private void invalidateRows() {
+        Arrays.fill(rowAdr, Integer.MIN_VALUE);
+    }
+
+    /**
+     * Sets up the glyphs and back buffer, if they don't exist or the size has changed
+     */
+    private void prepare() {
+        if (hexGlyphs == null) {
+            createGlyphs();
+        }
+
+        int w = Math.max(1, getWidth()), h = Math.max(1, getHeight());
+        if (buffer == null || buffer.getWidth() != w || buffer.getHeight() != h) {
+            buffer = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+
+            int rows = h / rowH + 1;
+            rowAdr = new int[rows];
+            rowHl = new int[rows];
+            rowGenFirst = new int[rows];
+            rowGenLast = new int[rows];
+            invalidateRows();
+        }
+    }
+
+    /**
+     * Renders the glyphs for every byte value
+     */
+    private void createGlyphs() {
+        Font font = getFont();
+        Font mono = new Font(Font.MONOSPACED, Font.PLAIN, font.getSize());
+        FontMetrics fm = getFontMetrics(font);
+        FontMetrics monoFm = getFontMetrics(mono);
+
+        hexGlyphW = 0;
+        for (char c : hexDigits) {
+            hexGlyphW = Math.max(hexGlyphW, fm.charWidth(c));
+        }
+        adrGlyphW = hexGlyphW;
+        hexGlyphW *= 2;
+        asciiGlyphW = monoFm.charWidth('W');
+
+        hexGlyphs = new BufferedImage[256];
+        hexGlyphsHl = new BufferedImage[256];
+        asciiGlyphs = new BufferedImage[256];
+        for (int v = 0; v < 256; v++) {
+            String hex = new String(new char[]{hexDigits[v >> 4], hexDigits[v & 0xF]});
+            hexGlyphs[v] = createGlyph(hex, font, Color.BLUE, hexGlyphW);
+            hexGlyphsHl[v] = createGlyph(hex, font, Color.WHITE, hexGlyphW);
+
+            char c = (v >= 0x20 && v < 0x7F) ? (char) v : '.';
+            asciiGlyphs[v] = createGlyph(String.valueOf(c), mono, Color.DARK_GRAY, asciiGlyphW);
+        }
+
+        adrGlyphs = new BufferedImage[17];
+        for (int d = 0; d < 16; d++) {
+            adrGlyphs[d] = createGlyph(String.valueOf(hexDigits[d]), font, Color.BLACK, adrGlyphW);
+        }
+        adrGlyphs[16] = createGlyph("0x", font, Color.BLACK, fm.stringWidth("0x"));
+    }
+
+    private BufferedImage createGlyph(String text, Font font, Color color, int w) {
+        BufferedImage img = new BufferedImage(Math.max(1, w), rowH, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setFont(font);
+        g.setColor(color);
+        g.drawString(text, 0, baseline);
+        g.dispose();
+        return img;
     }
 
     /**
-     * Draws a row of memory cells, including a start address
-     * @param g - Graphics context
+     * Draws a row of memory cells into the back buffer, including a start address
+     * @param g Back buffer graphics context
+     * @param slot Position of the row in the view
+     * @param row Row index
+     * @param startAdr First address in the row, or -1 if the row is past the end of memory
+     * @param endAdr Last address in the row
      */
-    private void drawRow(Graphics2D g, int row, int startAdr) {
-        AffineTransform xForm = g.getTransform();
+    private void drawRow(Graphics2D g, int slot, int row, int startAdr, int endAdr) {
+        int y = slot * rowH;
+        int w = getWidth();
+
         g.setColor(Color.WHITE);
+        if (startAdr < 0) {
+            g.fillRect(0, y, w, rowH);
+            return;
+        }
+
+        // Draw the address
+        g.fillRect(0, y, adrW, rowH);
+        g.drawImage(adrGlyphs[16], 5, y, null);
+        int x = 5 + adrGlyphs[16].getWidth();
+        for (int shift = 12; shift >= 0; shift -= 4) {
+            g.drawImage(adrGlyphs[(startAdr >> shift) & 0xF], x, y, null);
+            x += adrGlyphW;
+        }
 
-        if (startAdr <= NRAM.MAX_ADDR) {
-            // Draw the address
-            g.fillRect(0, 0, adrW, rowH);
+        // Draw the cells
+        g.setColor(row % 2 == 1 ? oddRow : evenRow);
+        g.fillRect(adrW, y, w - adrW, rowH);
 
-            g.setColor(Color.BLACK);
-            g.drawString("0x"+String.format("%04x", startAdr).toUpperCase(), 5, 14);
+        int count = endAdr - startAdr + 1;
+        editor.getBytes(startAdr, rowData, 0, count);
 
-            // Draw the cells
-            int val = (row % 2 == 1 ? 230 : 238);
-            g.setColor(new Color(val, val, val));
-            g.fillRect(adrW, 0, getWidth()-adrW, rowH);
+        int perCell = mode.bytesPerCell;
+        int bytes = getBytesPerRow();
+        int asciiW = showAscii ? asciiPad + bytes * asciiGlyphW : 0;
+        double cellW = (double) (w - adrW - asciiW) * perCell / bytes;
 
-            int cells = getCellsPerRow();
-            double cellW = (double)(getWidth()-adrW) / cells;
+        for (int i = 0; i < count; i += perCell) {
+            int cx = adrW + (int) (i / perCell * cellW);
+            int cw = adrW + (int) ((i / perCell + 1) * cellW) - cx;
+            boolean hl = updAdr >= startAdr + i && updAdr < startAdr + i + perCell;
 
-            g.translate(adrW, 0);
-            for (int i = 0; i < cells; i++) {
-                drawCell(g, startAdr + i, cellW);
-                g.translate(cellW, 0.0);
+            if (hl) {
+                g.setColor(Color.BLUE);
+                g.fillRect(cx, y, cw, rowH);
+            }
+            else if (heat != null) {
+                drawHeat(g, startAdr + i, Math.min(perCell, count - i), cx, y, cw);
             }
-            g.setTransform(xForm);
 
-            // Divider line
-            g.setColor(Colors.moduleLabel);
-            g.drawLine(0, rowH-1, getWidth(), rowH-1);
+            // Most significant byte first
+            BufferedImage[] glyphs = hl ? hexGlyphsHl : hexGlyphs;
+            int gx = cx + cw / 2 - hexGlyphW * perCell / 2;
+            for (int b = perCell - 1; b >= 0; b--) {
+                int v = i + b < count ? rowData[i + b] & 0xFF : 0;
+                g.drawImage(glyphs[v], gx, y, null);
+                gx += hexGlyphW;
+            }
         }
-        else {
-            g.fillRect(0, 0, getWidth(), rowH);
+
+        if (showAscii) {
+            int ax = w - asciiW + asciiPad;
+            for (int i = 0; i < count; i++) {
+                g.drawImage(asciiGlyphs[rowData[i] & 0xFF], ax + i * asciiGlyphW, y, null);
+            }
         }
+
+        // Divider line
+        g.setColor(Colors.moduleLabel);
+        g.drawLine(0, y + rowH - 1, w, y + rowH - 1);
     }
 
     /**
-     * Draws a memory cell - a single byte
+     * Shades a cell by its access count, on a log scale relative to the most accessed address
      */
-    private void drawCell(Graphics2D g, int adr, double w) {
-        if (adr > NRAM.MAX_ADDR) return;
-
-        g.setColor(Color.BLUE);
+    private void drawHeat(Graphics2D g, int adr, int len, int x, int y, int w) {
+        long count = 0;
+        for (int i = 0; i < len; i++) {
+            count += heat.getCount(adr + i);
+        }
+        if (count == 0) return;
 
-        if (adr == updAdr) {
-            g.fillRect(0, 0, (int) w, rowH);
-            g.setColor(Color.WHITE);
+        if (heatMax < 0) {
+            heatMax = heat.getMaxCount();
         }
 
-        int val = editor.getByte(adr);
-        g.drawString(String.format("%02x", val).toUpperCase(), (int) w/2 - 5, 14);
+        // Cells may span several addresses, so may be 'hotter' than the hottest address
+        double t = Math.log1p(count) / Math.log1p(Math.max(heatMax, 1));
+        int level = (int) Math.min(t * (heatColors.length - 1), heatColors.length - 1);
+        g.setColor(heatColors[level]);
+        g.fillRect(x, y, w, rowH);
     }
 
 }
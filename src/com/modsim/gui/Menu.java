@@ -75,6 +75,23 @@ public class Menu {
 
         sim.add(Ops.toggleRun);
         sim.add(Ops.step);
+        sim.add(new JCheckBoxMenuItem(Ops.turbo));
+
+        // Propagation engine selection
+        sim.addSeparator();
+        JMenu engine = new JMenu("Propagation engine");
+        ButtonGroup engines = new ButtonGroup();
+        JRadioButtonMenuItem event = new JRadioButtonMenuItem(Ops.engineEvent);
+        JRadioButtonMenuItem compiled = new JRadioButtonMenuItem(Ops.engineCompiled);
+        JRadioButtonMenuItem parallel = new JRadioButtonMenuItem(Ops.engineParallel);
+        event.setSelected(true);
+        engines.add(event);
+        engines.add(compiled);
+        engines.add(parallel);
+        engine.add(event);
+        engine.add(compiled);
+        engine.add(parallel);
+        sim.add(engine);
 
         app_menu.add(sim);
     }
@@ -6,6 +6,7 @@ import javax.swing.JButton;
 import javax.swing.JLabel;
 import javax.swing.JSlider;
 import javax.swing.JToolBar;
+import javax.swing.event.ChangeEvent;
 
 import com.modsim.operations.Ops;
 
@@ -38,9 +39,10 @@ public class ToolBar {
 		// Slider
 		JLabel lbl = new JLabel("Speed: ");
 		toolbar.add(lbl);
-		slideSpeed = new JSlider(JSlider.HORIZONTAL, 0, 60, 10);
+		slideSpeed = new JSlider(JSlider.HORIZONTAL, 0, 60, 15);
 		toolbar.add(slideSpeed);
 		slideSpeed.addChangeListener(Ops.sliderSetSpeed);
+		Ops.sliderSetSpeed.stateChanged(new ChangeEvent(slideSpeed));
 		
 		toolbar.addSeparator(new Dimension(15, 0));
 		addNavButtons();
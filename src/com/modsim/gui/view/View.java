@@ -10,7 +10,6 @@ import javax.swing.*;
 
 import com.modsim.modules.BaseModule;
 import com.modsim.modules.Link;
-import com.modsim.modules.parts.VisiblePart;
 import com.modsim.res.Colors;
 import com.modsim.Main;
 import com.modsim.tools.BaseTool;
@@ -101,7 +100,14 @@ public class View extends JPanel {
     public void paintStatic() {
         // Renders the static portion of the viewport
         if (staticCanvas == null || staticCanvas.getWidth() != getWidth() || staticCanvas.getHeight() != getHeight()) {
-            staticCanvas = getGraphicsConfiguration().createCompatibleImage(getWidth(), getHeight());
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            if (gc != null) {
+                staticCanvas = gc.createCompatibleImage(getWidth(), getHeight());
+            }
+            else {
+                // Not on screen (e.g. when benchmarking)
+                staticCanvas = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
+            }
             staticIsDirty = true;
         }
         Graphics2D staticG = staticCanvas.createGraphics();
@@ -217,11 +223,14 @@ public class View extends JPanel {
 
         g.setTransform(old);
 
-        // Draw iterations per second
+        // Draw iterations per second, and the target if there is one
         g.setColor(Color.BLACK);
         g.setFont(new Font("Monospaced", Font.BOLD, 10));
         DecimalFormat df = new DecimalFormat("#.##");
         String num = df.format(Main.sim.itrPerSec);
+        if (!Main.sim.pacer.isUnlimited()) {
+            num += " / " + df.format(Main.sim.pacer.getTargetRate());
+        }
         int pad = 20 - num.length();
         for (int i=0; i < pad; i++) num = " " + num;
         g.drawString(num + " iterations/s", 10, 10);
@@ -330,18 +339,23 @@ public class View extends JPanel {
      * "Soft" request for a redraw, used for simulation updates. Capped at 30Hz refresh rate.
      */
     public void flagDynamicRedraw() {
+        if (!requestFrame()) {
+            // persistence-of-vision simulation
+            Main.sim.povTick();
+        }
+    }
+
+    /**
+     * Repaints if a frame is due at the dynamic refresh rate
+     * @return Whether a repaint was requested
+     */
+    public boolean requestFrame() {
         long currentTime = System.currentTimeMillis();
         if (abs(currentTime - lastDynamicPaint) > (1000 / dynamicRefreshRate)) {
             repaint();
+            return true;
         }
-        else {
-            // persistence-of-vision simulation
-            for (BaseModule m : Main.sim.getModules()) {
-                for (VisiblePart p : m.parts) {
-                    p.povTick();
-                }
-            }
-        }
+        return false;
     }
 
 	public void resetView() {
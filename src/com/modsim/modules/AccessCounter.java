@@ -0,0 +1,98 @@
+package com.modsim.modules;
+
+import java.util.Arrays;
+
+/**
+ * Counts the reads and writes of each NRAM address. Counted on the simulation thread; reading the counts from
+ * another thread may give a slightly stale picture, which is fine for profiling.
+ */
+public class AccessCounter implements AccessTrace {
+
+    private final long[] reads = new long[NRAM.MAX_ADDR + 1];
+    private final long[] writes = new long[NRAM.MAX_ADDR + 1];
+    private long total = 0;
+
+    @Override
+    public void read(int address) {
+        reads[address]++;
+        total++;
+    }
+
+    @Override
+    public void write(int address) {
+        writes[address]++;
+        total++;
+    }
+
+    public long getReads(int address) {
+        return reads[address];
+    }
+
+    public long getWrites(int address) {
+        return writes[address];
+    }
+
+    /**
+     * @return Reads plus writes of an address
+     */
+    public long getCount(int address) {
+        return reads[address] + writes[address];
+    }
+
+    /**
+     * @return Accesses counted since the last clear - changes whenever any count does
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return The highest count (reads plus writes) of any address
+     */
+    public long getMaxCount() {
+        long max = 0;
+        for (int i = 0; i <= NRAM.MAX_ADDR; i++) {
+            max = Math.max(max, reads[i] + writes[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Finds the most accessed addresses
+     * @param n Number of addresses to find
+     * @return Up to n addresses with non-zero counts, most accessed first
+     */
+    public int[] getHottest(int n) {
+        int[] adr = new int[n];
+        long[] cnt = new long[n];
+        int found = 0;
+
+        // Insertion into a short sorted list, as n is small
+        for (int i = 0; i <= NRAM.MAX_ADDR; i++) {
+            long c = reads[i] + writes[i];
+            if (c == 0 || (found == n && c <= cnt[n - 1])) continue;
+
+            int j = Math.min(found, n - 1);
+            while (j > 0 && cnt[j - 1] < c) {
+                adr[j] = adr[j - 1];
+                cnt[j] = cnt[j - 1];
+                j--;
+            }
+            adr[j] = i;
+            cnt[j] = c;
+            if (found < n) found++;
+        }
+
+        return Arrays.copyOf(adr, found);
+    }
+
+    /**
+     * Resets every count to zero
+     */
+    public void clear() {
+        Arrays.fill(reads, 0);
+        Arrays.fill(writes, 0);
+        total = 0;
+    }
+
+}
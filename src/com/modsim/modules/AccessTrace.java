@@ -0,0 +1,30 @@
+package com.modsim.modules;
+
+/**
+ * Receives the memory accesses made by an NRAM module. The module holds OFF unless tracing is turned on, so
+ * untraced runs pay for nothing but a call the JIT can inline away.
+ */
+public interface AccessTrace {
+
+    /**
+     * Does nothing
+     */
+    AccessTrace OFF = new AccessTrace() {
+        @Override
+        public void read(int address) {}
+
+        @Override
+        public void write(int address) {}
+    };
+
+    /**
+     * Called when the module outputs an address
+     */
+    void read(int address);
+
+    /**
+     * Called when the module stores to an address
+     */
+    void write(int address);
+
+}
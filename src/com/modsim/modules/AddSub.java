@@ -9,6 +9,7 @@ import com.modsim.modules.parts.SSText;
 import com.modsim.res.Colors;
 import com.modsim.res.Colors.LEDColour;
 import com.modsim.util.BinData;
+import com.modsim.util.BinValue;
 import com.modsim.modules.ports.Input;
 import com.modsim.modules.parts.LED;
 import com.modsim.modules.parts.LEDRow;
@@ -106,9 +107,9 @@ public class AddSub extends BaseModule {
     @Override
     public void propagate() {
         // Inputs as ints
-        int a = dInA.getVal().getUInt();
-        int b = dInB.getVal().getUInt();
-        BinData cInV = cIn.getVal();
+        int a = dInA.getUInt();
+        int b = dInB.getUInt();
+        BinValue cInV = cIn.getValue();
 
         int func = cInV.getUInt() & 3;
         for (int i = 0; i < cLEDs.size(); i++) {
@@ -135,26 +136,22 @@ public class AddSub extends BaseModule {
         result = result & 0xF;
 
         // Result data
-        BinData r = new BinData();
-        r.setUInt(result);
+        BinValue r = BinValue.ofUInt(result);
 
         // Control out
-        BinData cOutVal = new BinData(cInV);
-        cOutVal.setBit(2, carryOut);
         boolean not0 = cInV.getBooleanBit(3) || result != 0;
-        cOutVal.setBooleanBit(3, not0);
+        BinValue cOutVal = cInV.withBit(2, carryOut).withBit(3, not0 ? BinData.HIGH : BinData.LOW);
 
         // Boolean out
         boolean bool;
-        if (cIn.getVal().getBit(0) == 1 && cIn.getVal().getBit(1) == 1) {
+        if (cInV.getBit(0) == 1 && cInV.getBit(1) == 1) {
             // Negative test
             bool = r.getBit(3) == BinData.HIGH;
         } else {
             // Zero test
             bool = result == 0 && !not0;
         }
-        BinData boolOut = new BinData();
-        boolOut.setBool(bool);
+        BinValue boolOut = BinValue.ofBool(bool);
         boolLED.setEnabled(bool);
 
         // Display
@@ -53,6 +53,19 @@ public abstract class BaseModule extends PickableEntity {
       */
     public boolean error = false;
 
+    /**
+     * Propagation bookkeeping, maintained by the simulator: the propagation in which the module was last
+     * evaluated, and whether it's currently waiting on the worklist
+     */
+    public int propEpoch = -1;
+    public boolean propQueued = false;
+
+    /**
+     * Index of the module in the simulator's most recently compiled netlist (or partition), or -1 if it hasn't
+     * been compiled
+     */
+    public int netIndex = -1;
+
     /**
      * Get the object's ID, used for file operations
      * @return The ID
@@ -81,6 +94,7 @@ public abstract class BaseModule extends PickableEntity {
         p.type = type;
         p.owner = this;
 
+        p.index = ports.size();
         bidirs.add(p);
         ports.add(p);
 
@@ -101,6 +115,7 @@ public abstract class BaseModule extends PickableEntity {
         p.type = type;
         p.owner = this;
 
+        p.index = ports.size();
         bidirs.add(p);
         ports.add(p);
 
@@ -121,6 +136,7 @@ public abstract class BaseModule extends PickableEntity {
         o.type = type;
         o.owner = this;
 
+        o.index = ports.size();
         outputs.add(o);
         ports.add(o);
         return o;
@@ -154,6 +170,7 @@ public abstract class BaseModule extends PickableEntity {
         i.pull = pullVal;
 
 
+        i.index = ports.size();
         inputs.add(i);
         ports.add(i);
         return i;
@@ -162,6 +179,7 @@ public abstract class BaseModule extends PickableEntity {
     /**
      * Returns ports affected by changes to the given input.
      * Should be overwritten by subclasses to improve loop detector accuracy.
+     * Only called on each type's prototype, to build its dependency table - see getAffectedMask.
      * @param in Input port to be changed
      */
     public List<Port> getAffected(Port in) {
@@ -177,6 +195,24 @@ public abstract class BaseModule extends PickableEntity {
         return outList;
     }
 
+    /**
+     * Ports affected by changes to the given input, from the module type's dependency table. Doesn't allocate.
+     * @param in Input port to be changed
+     * @return Bitmap over port indices (bit n set if ports.get(n) is affected)
+     */
+    public long getAffectedMask(Port in) {
+        return getModType().getAffects(in.index);
+    }
+
+    /**
+     * Ports whose changes affect the given output, from the module type's dependency table. Doesn't allocate.
+     * @param out Output port
+     * @return Bitmap over port indices (bit n set if ports.get(n) affects it)
+     */
+    public long getAffectingMask(Port out) {
+        return getModType().getAffectedBy(out.index);
+    }
+
 
     /**
      * Adds a part
@@ -714,6 +750,20 @@ public abstract class BaseModule extends PickableEntity {
      */
     public HashMap<String, String> dataOut() { return null; }
 
+    /**
+     * Copies module-specific data from another module of the same type. By default this goes through
+     * dataOut and dataIn.
+     * @param src Module to copy from
+     * @return Whether there was any data to copy
+     */
+    public boolean copyData(BaseModule src) {
+        HashMap<String, String> data = src.dataOut();
+        if (data == null) return false;
+
+        dataIn(data);
+        return true;
+    }
+
     public enum AvailableModules {
         // Enum members should not be renamed!
         ADDSUB(new AddSub(), "Arithmetic Unit"),
@@ -737,9 +787,47 @@ public abstract class BaseModule extends PickableEntity {
         private final BaseModule module;
         private final String name;
 
+        /**
+         * Input to output dependencies of the module's ports, from the prototype's getAffected. Port layouts
+         * are fixed per type, so bit n of affects[i] is set if ports.get(i) affects ports.get(n), and
+         * affectedBy is the transpose.
+         */
+        private final long[] affects;
+        private final long[] affectedBy;
+
         AvailableModules(BaseModule mod, String name) {
             this.module = mod;
             this.name = name;
+
+            int n = mod.ports.size();
+            if (n > Long.SIZE) {
+                throw new IllegalStateException("Module " + name + " has too many ports for its dependency table");
+            }
+
+            affects = new long[n];
+            affectedBy = new long[n];
+            for (Port in : mod.ports) {
+                for (Port out : mod.getAffected(in)) {
+                    affects[in.index] |= 1L << out.index;
+                    affectedBy[out.index] |= 1L << in.index;
+                }
+            }
+        }
+
+        /**
+         * @param port Port index
+         * @return Bitmap of the port indices affected by changes to the port
+         */
+        public long getAffects(int port) {
+            return affects[port];
+        }
+
+        /**
+         * @param port Port index
+         * @return Bitmap of the port indices whose changes affect the port
+         */
+        public long getAffectedBy(int port) {
+            return affectedBy[port];
         }
 
         public BaseModule getSrcModule() {
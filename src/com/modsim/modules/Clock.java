@@ -7,7 +7,7 @@ import java.util.HashMap;
 
 import com.modsim.res.Colors;
 import com.modsim.res.Fonts;
-import com.modsim.util.BinData;
+import com.modsim.util.BinValue;
 import com.modsim.modules.parts.LED;
 import com.modsim.res.Colors.LEDColour;
 import com.modsim.modules.parts.Port;
@@ -93,20 +93,14 @@ public class Clock extends BaseModule {
             sendReset = false;
         }
 
-        // Phase 1
-        BinData p1 = new BinData();
-        p1.setBit(0, (step == 1) ? 1 : 0);
+        // Phase 1 & 2, with the reset signal - only the low two bits are connected
+        int reset = sendReset ? 2 : 0;
+        BinValue p1 = BinValue.of(((step == 1) ? 1 : 0) | reset, 3);
         phase1.setEnabled(step == 1);
 
-        // Phase 2
-        BinData p2 = new BinData();
-        p2.setBit(0, (step == 3) ? 1 : 0);
+        BinValue p2 = BinValue.of(((step == 3) ? 1 : 0) | reset, 3);
         phase2.setEnabled(step == 3);
 
-        // Reset signal
-        p2.setBooleanBit(1, sendReset);
-        p1.setBooleanBit(1, sendReset);
-
         // Set the outputs
         outputs.get(0).setVal(p1);
         outputs.get(1).setVal(p2);
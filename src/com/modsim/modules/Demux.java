@@ -12,7 +12,6 @@ import com.modsim.modules.parts.LEDRow;
 import com.modsim.modules.ports.Output;
 import com.modsim.modules.parts.Port;
 import com.modsim.res.Colors;
-import com.modsim.util.BinData;
 
 /**
  * Demultiplexor module
@@ -88,19 +87,20 @@ public class Demux extends BaseModule {
 
     @Override
     public void propagate() {
-        final int outSel = controlIn.getVal().getUInt() & 3;
+        final int outSel = controlIn.getUInt() & 3;
+        final int data = dataIn.getPacked();
 
         for (int i = 0; i < dataOutputs.size(); i++) {
             if (i == outSel) {
-                dataOutputs.get(i).setVal(dataIn.getVal());
+                dataOutputs.get(i).setPacked(data);
                 controlLEDs.get(i).setEnabled(true);
             } else {
-                dataOutputs.get(i).setVal(new BinData(0));
+                dataOutputs.get(i).setPacked(0xF0);
                 controlLEDs.get(i).setEnabled(false);
             }
         }
 
-        controlOut.setVal(controlIn.getVal());
+        controlOut.setPacked(controlIn.getPacked());
 
         dataLEDs.setVal(dataIn.getVal());
     }
@@ -80,8 +80,9 @@ public class Fanout extends BaseModule {
     public void propagate() {
         dLEDs.setVal(inputs.get(0).getVal());
 
+        int in = inputs.get(0).getPacked();
         for (Output o : outputs) {
-            o.setVal(inputs.get(0).getVal());
+            o.setPacked(in);
         }
     }
 
@@ -28,6 +28,13 @@ public class Link {
 
     private int linkInd = -1;
 
+    /**
+     * Propagation bookkeeping, maintained by the simulator: the propagation in which the link last carried
+     * a change, and how many changes it has carried during it
+     */
+    public int propEpoch = -1;
+    public int propCount = 0;
+
     /**
      * Gets a unique ID for the link
      * @return
@@ -49,157 +56,185 @@ public class Link {
      */
     public static Link createLink(Port source, Port target, BezierPath path) {
         // Check error conditions first
+        if (!canLink(source, target)) {
+            return null;
+        }
+
+        // Start a compound operation (likely nested) so we can abort cleanly
+        Main.opStack.beginCompoundOp();
+
+        // Cleanup old links
+        if (source.link != null) {
+            source.link.delete();
+        }
+        if (target.link != null) {
+            target.link.delete();
+        }
+
+        Link newLink = join(source, target, path);
+        if (newLink == null) {
+            Main.opStack.cancelCompoundOp();
+            return null;
+        }
+
+        // Check loops
+        List<BaseModule> modules = new ArrayList<>();
+        if (Main.sim.checkLoops(newLink, modules)) {
+            showWarning("Link would create a loop. Have you forgotten a register?", "Invalid link");
+            System.err.println("No connect: Loop detected");
+            source.link = null;
+            target.link = null;
+
+            for (BaseModule m : modules) {
+                m.error = true;
+            }
+
+            Main.opStack.cancelCompoundOp();
+            return null;
+        }
+
+        // Changes are done
+        Main.opStack.endCompoundOp();
+
+        newLink.targ.setVal(newLink.src.getVal());
+
+        return newLink;
+    }
+
+    /**
+     * Creates a new link to be added to the simulation in bulk, by Sim.addAll, which checks the whole batch for
+     * loops at once. No operations are recorded and nothing is propagated. Any link already at either port is
+     * dropped - it must belong to the same batch, which Sim.addAll then leaves it out of.
+     * @param source The first port
+     * @param target The second port
+     * @param path A bezier path to display for the link
+     * @return New link, or null if link was invalid
+     */
+    public static Link createBulk(Port source, Port target, BezierPath path) {
+        if (!canLink(source, target)) {
+            return null;
+        }
+
+        for (Link old : new Link[] {source.link, target.link}) {
+            if (old != null) {
+                old.src.link = null;
+                old.targ.link = null;
+                old.targ.setVal(new BinData());
+            }
+        }
+
+        Link newLink = join(source, target, path);
+        if (newLink != null) {
+            newLink.targ.setVal(newLink.src.getVal());
+        }
 
+        return newLink;
+    }
+
+    /**
+     * Checks whether two ports can be linked, warning the user if not
+     */
+    private static boolean canLink(Port source, Port target) {
     	if (source == null || target == null) {
             // there's no message dialog here as it's not the user's fault - this generally happens when opening
             // corrupted files
     	    System.err.println("No connect: Port(s) do not exist");
-    	    return null;
+    	    return false;
     	}
 
         // No self-links
     	else if (source == target) {
-    	    JOptionPane.showMessageDialog(Main.ui.frame,
-                    "Cannot link port to itself",
-                    "Invalid Link",
-                    JOptionPane.WARNING_MESSAGE);
-    	    return null;
+    	    showWarning("Cannot link port to itself", "Invalid Link");
+    	    return false;
     	}
         else if (source.owner == target.owner) {
-            JOptionPane.showMessageDialog(Main.ui.frame,
-                    "Cannot link module to itself",
-                    "Invalid Link",
-                    JOptionPane.WARNING_MESSAGE);
-            return null;
+            showWarning("Cannot link module to itself", "Invalid Link");
+            return false;
         }
 
         // If two directional ports are either both outputs or both inputs, they cannot be linked
         else if (source.canOutput() == target.canOutput() && source.hasDirection() && target.hasDirection()) {
-            JOptionPane.showMessageDialog(Main.ui.frame,
-                    "Cannot link same port types together",
-                    "Invalid Link",
-                    JOptionPane.WARNING_MESSAGE);
-            return null;
+            showWarning("Cannot link same port types together", "Invalid Link");
+            return false;
         }
-        else {
-            // Start a compound operation (likely nested) so we can abort cleanly
-            Main.opStack.beginCompoundOp();
-
-            // Cleanup old links
-            if (source.link != null) {
-                source.link.delete();
-            }
-            if (target.link != null) {
-                target.link.delete();
-            }
-
-            Link newLink = new Link();
-            source.link = newLink;
-            target.link = newLink;
 
-            // Pick direction of link
+        return true;
+    }
 
-            // If we're between two bi-dirs, the user's word is law
-            if (!source.hasDirection() && !target.hasDirection()) {
-                // (attempt to) create link in direction chosen
-                newLink.src = source;
-                newLink.targ = target;
-                newLink.path = path;
+    /**
+     * Joins two unlinked ports, picking the link's direction and setting any bidirectional ports' modes to match
+     * @return New link, or null if no direction fits
+     */
+    private static Link join(Port source, Port target, BezierPath path) {
+        Link newLink = new Link();
+        source.link = newLink;
+        target.link = newLink;
+
+        // Pick direction of link
+
+        // If we're between two bi-dirs, the user's word is law
+        if (!source.hasDirection() && !target.hasDirection()) {
+            // (attempt to) create link in direction chosen
+            newLink.src = source;
+            newLink.targ = target;
+            newLink.path = path;
+
+            source.setMode(Port.Mode.MODE_OUTPUT);
+            target.setMode(Port.Mode.MODE_INPUT);
+        }
+        else if (source.canOutput() && target.canInput()) {
+            newLink.src = source;
+            newLink.targ = target;
+            newLink.path = path;
 
+            if (!source.hasDirection()) {
                 source.setMode(Port.Mode.MODE_OUTPUT);
+            }
+
+            if (!target.hasDirection()) {
                 target.setMode(Port.Mode.MODE_INPUT);
             }
-            else if (source.canOutput() && target.canInput()) {
-                newLink.src = source;
-                newLink.targ = target;
-                newLink.path = path;
-
-                if (!source.hasDirection()) {
-                    source.setMode(Port.Mode.MODE_OUTPUT);
-                }
-
-                if (!target.hasDirection()) {
-                    target.setMode(Port.Mode.MODE_INPUT);
-                }
+        }
+        else if (source.canInput() && target.canOutput()) {
+            newLink.src = target;
+            newLink.targ = source;
+            path.reverse();
+            newLink.path = path;
+
+            if (!source.hasDirection()) {
+                source.setMode(Port.Mode.MODE_INPUT);
             }
-            else if (source.canInput() && target.canOutput()) {
-                newLink.src = target;
-                newLink.targ = source;
-                path.reverse();
-                newLink.path = path;
-
-                if (!source.hasDirection()) {
-                    source.setMode(Port.Mode.MODE_INPUT);
-                }
-
-                if (!target.hasDirection()) {
-                    target.setMode(Port.Mode.MODE_OUTPUT);
-                }
+
+            if (!target.hasDirection()) {
+                target.setMode(Port.Mode.MODE_OUTPUT);
             }
-            else {
+        }
+        else {
+            if (Main.ui != null) {
                 JOptionPane.showMessageDialog(Main.ui.frame,
                         (new Throwable()).getStackTrace(),
                         "Unknown error during link creation",
                         JOptionPane.ERROR_MESSAGE);
-                Main.opStack.cancelCompoundOp();
-                return null;
             }
-
-            // Check loops
-            List<BaseModule> modules = new ArrayList<>();
-            if (newLink.checkLoops(newLink, modules)) {
-                JOptionPane.showMessageDialog(Main.ui.frame,
-                        "Link would create a loop. Have you forgotten a register?",
-                        "Invalid link",
-                        JOptionPane.WARNING_MESSAGE);
-                System.err.println("No connect: Loop detected");
-                source.link = null;
-                target.link = null;
-
-                for (BaseModule m : modules) {
-                    m.error = true;
-                }
-
-                Main.opStack.cancelCompoundOp();
-                return null;
+            else {
+                new Throwable("Unknown error during link creation").printStackTrace();
             }
-
-            // Changes are done
-            Main.opStack.endCompoundOp();
-
-            newLink.targ.setVal(newLink.src.getVal());
-
-            return newLink;
+            return null;
         }
+
+        return newLink;
     }
 
     /**
-     * Recursively check for loops in the design
-     * @param check Link to check for
-     * @param modules List of com.modsim.modules checked - used for error display
-     * @return Whether the check link was found
+     * Warns the user about a rejected link - on the console when there's no GUI (headless runs)
      */
-    private boolean checkLoops(Link check, List<BaseModule> modules) {
-        // Registers & NRAM *should* terminate loops
-        BaseModule.AvailableModules type = targ.owner.getModType();
-        if (type == BaseModule.AvailableModules.RAM || type == BaseModule.AvailableModules.REGISTER) return false;
-
-        // Follow every affected outbound link
-        boolean result = false;
-        for (Port p : targ.owner.getAffected(targ)) {
-            if (p.canOutput() && p.link != null) {
-                if (p.link == check) {
-                    modules.add(targ.owner);
-                    return true; // Loop detected
-                }
-                else {
-                    result |= p.link.checkLoops(check, modules);
-                    if (result) modules.add(targ.owner);
-                }
-            }
+    private static void showWarning(String message, String title) {
+        if (Main.ui != null) {
+            JOptionPane.showMessageDialog(Main.ui.frame, message, title, JOptionPane.WARNING_MESSAGE);
+        }
+        else {
+            System.err.println(title + ": " + message);
         }
-
-        return result;
     }
 
     /**
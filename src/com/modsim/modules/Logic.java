@@ -9,7 +9,7 @@ import com.modsim.modules.parts.*;
 import com.modsim.modules.ports.Input;
 import com.modsim.modules.ports.Output;
 import com.modsim.res.Colors;
-import com.modsim.util.BinData;
+import com.modsim.util.BinValue;
 
 /**
  * Logic Unit
@@ -89,10 +89,10 @@ public class Logic extends BaseModule {
     @Override
     public void propagate() {
         // Get the inputs
-        int aVal = dInA.getVal().getUInt();
-        int bVal = dInB.getVal().getUInt();
+        int aVal = dInA.getUInt();
+        int bVal = dInB.getUInt();
 
-        int func = cIn.getVal().getUInt() & 3;
+        int func = cIn.getUInt() & 3;
         int result = 0;
 
         for (int i = 0; i < cLEDs.size(); i++) {
@@ -113,15 +113,14 @@ public class Logic extends BaseModule {
                 result = aVal ^ bVal;
                 break;
         }
-        BinData r = new BinData();
-        r.setUInt(result);
+        BinValue r = BinValue.ofUInt(result);
 
         // Set display
         leds.setVal(r);
 
         // Set outputs
         rOut.setVal(r);
-        cOut.setVal(cIn.getVal());
+        cOut.setPacked(cIn.getPacked());
     }
 
     @Override
@@ -84,16 +84,16 @@ public class Mux extends BaseModule {
 
     @Override
     public void propagate() {
-        final int sel = contIn.getVal().getUInt() & 3;
+        final int sel = contIn.getUInt() & 3;
 
-        dOut.setVal(dIn.get(sel).getVal());
+        dOut.setPacked(dIn.get(sel).getPacked());
         dLEDs.setVal(dIn.get(sel).getVal());
 
         for (int i = 0; i < 4; i++) {
             cLEDs.get(i).setEnabled(i == sel);
         }
 
-        contOut.setVal(contIn.getVal());
+        contOut.setPacked(contIn.getPacked());
     }
 
     @Override
@@ -1,23 +1,26 @@
 package com.modsim.modules;
 
+import com.modsim.Main;
 import com.modsim.gui.MemEdit;
 
 import java.awt.Font;
 import java.awt.Graphics2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.logging.Logger;
 
-import javax.swing.SwingUtilities;
-
 import com.modsim.modules.parts.*;
 import com.modsim.modules.ports.Input;
 import com.modsim.modules.ports.Output;
 import com.modsim.res.Colors;
 import com.modsim.res.Colors.LEDColour;
+import com.modsim.simulator.Sim;
 import com.modsim.util.BinData;
+import com.modsim.util.BinValue;
 import com.modsim.util.HexReader;
 import com.modsim.util.HexWriter;
 
@@ -29,21 +32,63 @@ import com.modsim.util.HexWriter;
  */
 public class NRAM extends BaseModule {
 
-    private MemEdit editor = null;
+    private volatile MemEdit editor = null;
 
     /**
      * The maximum VALID address
      */
     public static final int MAX_ADDR = 0xFFFF;
 
-    // The number of BinData locations in the store
+    /**
+     * Addresses per page, the granularity at which memory is allocated and changes are tracked
+     */
+    public static final int PAGE_SIZE = 256;
+
+    // The number of 4-bit locations in the store
     private static final int LOCATIONS = 0x20000;
     private static final int CLOCK_PIN = 0;
     private static final int WRITE_PIN = 2;
 
-    private final BinData[] store = new BinData[LOCATIONS];
+    // Memory is allocated in pages of 256 addresses (512 locations) as they're first written. Until then they
+    // share the zero page, which is never written, and copies of the module share pages until either side
+    // writes to them.
+    private static final int PAGE_SHIFT = 9; // PAGE_SIZE addresses, two locations each
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+    private static final int PAGES = LOCATIONS >> PAGE_SHIFT;
+
+    private static final byte ZERO = (byte) BinValue.ZERO.getPacked();
+    private static final byte[] ZERO_PAGE = new byte[1 << PAGE_SHIFT];
+
+    static {
+        Arrays.fill(ZERO_PAGE, ZERO);
+    }
+
+    // Stands in for the sim lock before there's a simulation (see simLock)
+    private static final Object NO_SIM_LOCK = new Object();
+
+    // Each location packed as in BinValue.getPacked, (mask << 4) | value, so NOCON bits survive storage
+    private final byte[][] pages = new byte[PAGES][];
+    private final boolean[] shared = new boolean[PAGES];
+
+    // Change tracking: the generation in which each page last changed, and a bitmap of the pages changed since
+    // the editor last looked (set by the sim thread, taken by the editor's)
+    private final int[] pageGen = new int[PAGES];
+    private int generation = 0;
+    private final AtomicLongArray dirty = new AtomicLongArray(PAGES / Long.SIZE);
     private final boolean clearOnReset;
 
+    // Access tracing: OFF unless turned on, and the counts kept while it's off so they can still be inspected
+    private AccessTrace trace = AccessTrace.OFF;
+    private AccessCounter counter = null;
+
+    // The inputs and memory generation the outputs were last evaluated from. Unless data is being stored, nothing
+    // else affects them, so a propagation with all of these unchanged (e.g. one caused by data in changing while
+    // reading) can be skipped.
+    private int lastControl = -1;
+    private int lastAddress = -1;
+    private boolean lastJumper = false;
+    private int lastGeneration = -1;
+
     // Port definitions
     private final Input dataInA;
     private final Input dataInB;
@@ -135,44 +180,82 @@ public class NRAM extends BaseModule {
 
     @Override
     public void propagate() {
-        int address = combineAddress(addrA.getVal(), addrB.getVal(), addrC.getVal(), addrD.getVal());
-        controlOut.setVal(controlIn.getVal()); // pass-through
+        int control = controlIn.getPacked();
+        int address = combineAddress(addrA.getUInt(), addrB.getUInt(), addrC.getUInt(), addrD.getUInt());
+        boolean jumper = writeJumper.getEnabled();
+        boolean writeHigh = isHigh(control, WRITE_PIN);
+        boolean storing = writeHigh && isHigh(control, CLOCK_PIN) && jumper;
+
+        if (!storing && control == lastControl && address == lastAddress && jumper == lastJumper
+                && generation == lastGeneration) {
+            // The outputs already hold the value, but it's still a read
+            if (!writeHigh) trace.read(address);
+            return;
+        }
+
+        controlOut.setPacked(control); // pass-through
         writeLED.setEnabled(false);
 
-        if (controlIn.getVal().getBit(WRITE_PIN) == BinData.HIGH) {
+        if (writeHigh) {
             // Write high, disable output
-            dataOutA.setVal(new BinData());
-            dataOutB.setVal(new BinData());
-            dataLEDsA.setVal(dataOutA.getVal());
-            dataLEDsB.setVal(dataOutB.getVal());
+            dataOutA.setVal(BinValue.NOCON);
+            dataOutB.setVal(BinValue.NOCON);
+            dataLEDsA.setVal(BinValue.NOCON);
+            dataLEDsB.setVal(BinValue.NOCON);
 
             // Clock high AND jumper on, write to memory.
-            if (controlIn.getVal().getBit(CLOCK_PIN) == BinData.HIGH && writeJumper.getEnabled()) {
-                write(address, dataInA.getVal(), dataInB.getVal());
+            if (storing) {
+                write(address, dataInA.getValue(), dataInB.getValue());
                 writeLED.setEnabled(true);
             }
         } else {
             // Write low, enable output
-            BinData[] read = read(address);
-            dataOutA.setVal(read[0]);
-            dataOutB.setVal(read[1]);
-            dataLEDsA.setVal(read[0]);
-            dataLEDsB.setVal(read[1]);
+            trace.read(address);
+            BinValue lo = BinValue.fromPacked(load(address << 1));
+            BinValue hi = BinValue.fromPacked(load((address << 1) | 1));
+            dataOutA.setVal(lo);
+            dataOutB.setVal(hi);
+            dataLEDsA.setVal(lo);
+            dataLEDsB.setVal(hi);
         }
+
+        lastControl = control;
+        lastAddress = address;
+        lastJumper = jumper;
+        lastGeneration = generation;
     }
 
-    public void clear() {
-        final BinData blank = new BinData(BinData.LOW, BinData.LOW, BinData.LOW, BinData.LOW);
+    /**
+     * Whether a bit of a packed value is connected and high, as getBit(bit) == BinData.HIGH
+     */
+    private static boolean isHigh(int packed, int bit) {
+        return ((packed & (packed >> 4)) >> bit & 1) == 1;
+    }
 
-        for (int i = 0; i < LOCATIONS; i++) {
-            // Perhaps we should lazily initialize the data - complicates memory editor.
-            // Alternatively, make BinData immutable?
-            store[i] = new BinData(blank);
+    public void clear() {
+        // The simulation may be storing to the pages as they're replaced
+        synchronized (simLock()) {
+            clearPages();
         }
 
         updateEditor(0);
     }
 
+    private void clearPages() {
+        Arrays.fill(pages, ZERO_PAGE);
+        Arrays.fill(shared, false);
+        touchAll();
+    }
+
+    /**
+     * The lock the simulation stores to memory under. Before there's a simulation (e.g. while the module palette
+     * is built) there's nothing to race with, so a private lock stands in for it.
+     */
+    private static Object simLock() {
+        Sim sim = Main.sim;
+        return sim != null ? sim.lock : NO_SIM_LOCK;
+    }
+
     @Override
     public void dataIn(HashMap<String, String> data) {
         if (data.containsKey("memory_store")) {
@@ -190,12 +273,22 @@ public class NRAM extends BaseModule {
     }
 
     @Override
-    public HashMap<String, String> dataOut() {
-        String storeStr = HexWriter.hexString(this, false);
-        if (storeStr.isEmpty()) return null;
+    public boolean copyData(BaseModule src) {
+        NRAM ram = (NRAM) src;
+        copyMemory(ram);
+        writeJumper.setEnabled(ram.writeJumper.getEnabled());
+        return true;
+    }
 
+    @Override
+    public HashMap<String, String> dataOut() {
         HashMap<String, String> data = new HashMap<>();
-        data.put("memory_store", storeStr);
+
+        // Blank memory has nothing to store
+        String storeStr = HexWriter.hexString(this, false);
+        if (!storeStr.isEmpty()) {
+            data.put("memory_store", storeStr);
+        }
         data.put("write_jumper", (writeJumper.getEnabled()) ? "1" : "0");
 
         return data;
@@ -205,39 +298,154 @@ public class NRAM extends BaseModule {
         // Initialise all values. Use 0 for simplistic view, or random to reflect
         // the undefined state of memory when first powered up.
         if (clearOnReset) {
-            clear();
+            // Only called while constructing, so nothing else can see the pages yet
+            clearPages();
         } else {
             Random rng = new Random();
 
-            for (int i = 0; i < LOCATIONS; i++) {
-                store[i] = new BinData();
-                store[i].setUInt(rng.nextInt());
+            for (int p = 0; p < PAGES; p++) {
+                byte[] page = new byte[1 << PAGE_SHIFT];
+                for (int i = 0; i < page.length; i++) {
+                    page[i] = (byte) BinValue.ofUInt(rng.nextInt()).getPacked();
+                }
+                pages[p] = page;
+                shared[p] = false;
             }
+            touchAll();
         }
     }
 
-    private static int combineAddress(BinData a0, BinData a1, BinData a2, BinData a3) {
-        return a0.getUInt() | (a1.getUInt() << 4) | (a2.getUInt() << 8) | (a3.getUInt() << 12);
+    /**
+     * Reads a location
+     */
+    private byte load(int loc) {
+        return pages[loc >> PAGE_SHIFT][loc & PAGE_MASK];
     }
 
-    private void updateEditor(int address) {
-        // Update the memory editor, if any
-        if (editor != null) {
-            editor.updAdr = address >> 1;
-            SwingUtilities.invokeLater(new Runnable() {
-                public void run() {
-                    editor.update();
+    /**
+     * Writes a location, first giving the module its own copy of the page if it's shared
+     */
+    private void store(int loc, byte packed) {
+        int p = loc >> PAGE_SHIFT;
+        byte[] page = pages[p];
+        if (page[loc & PAGE_MASK] == packed) return;
+
+        if (page == ZERO_PAGE || shared[p]) {
+            page = page.clone();
+            pages[p] = page;
+            shared[p] = false;
+        }
+        page[loc & PAGE_MASK] = packed;
+        touch(p);
+    }
+
+    /**
+     * Records a change to a page. Comes after the change itself, so that a reader which saw the old generation
+     * can't have seen anything newer than it.
+     */
+    private void touch(int p) {
+        pageGen[p] = ++generation;
+
+        int i = p / Long.SIZE;
+        long bit = 1L << p;
+        long d;
+        while (((d = dirty.get(i)) & bit) == 0 && !dirty.compareAndSet(i, d, d | bit));
+    }
+
+    /**
+     * Records a change to every page
+     */
+    private void touchAll() {
+        Arrays.fill(pageGen, ++generation);
+        for (int i = 0; i < dirty.length(); i++) {
+            dirty.set(i, -1L);
+        }
+    }
+
+    /**
+     * Gets the generation in which a page last changed. Generations only increase, so a page whose generation is
+     * the same as when it was last read still holds the same data.
+     * @param page Page index (address / PAGE_SIZE)
+     */
+    public int getPageGeneration(int page) {
+        return pageGen[page];
+    }
+
+    /**
+     * Takes the set of pages changed since the last call, clearing it
+     * @param into (out) Bitmap of page indices, with the changed pages ORed in. Must hold at least
+     *             (MAX_ADDR + 1) / PAGE_SIZE bits.
+     * @return Whether any pages had changed
+     */
+    public boolean takeDirtyPages(long[] into) {
+        boolean any = false;
+        for (int i = 0; i < dirty.length(); i++) {
+            long d = dirty.getAndSet(i, 0);
+            into[i] |= d;
+            any |= d != 0;
+        }
+        return any;
+    }
+
+    /**
+     * Makes this module's memory a copy of another's. The pages are shared until either module writes to them,
+     * so this takes time proportional to the number of pages, not the memory size.
+     * @param src Module to copy from
+     */
+    public void copyMemory(NRAM src) {
+        // The source may be running - its pages mustn't be written while they're being shared
+        synchronized (simLock()) {
+            for (int p = 0; p < PAGES; p++) {
+                byte[] page = src.pages[p];
+                pages[p] = page;
+                if (page != ZERO_PAGE) {
+                    shared[p] = true;
+                    src.shared[p] = true;
+                }
+                else {
+                    shared[p] = false;
                 }
-            });
+            }
+            touchAll();
+        }
+
+        updateEditor(0);
+    }
+
+    /**
+     * @return The number of pages of memory the module has been allocated (including any shared with copies)
+     */
+    public int getAllocatedPages() {
+        int n = 0;
+        for (byte[] page : pages) {
+            if (page != ZERO_PAGE) n++;
+        }
+        return n;
+    }
+
+    private static int combineAddress(int a0, int a1, int a2, int a3) {
+        return a0 | (a1 << 4) | (a2 << 8) | (a3 << 12);
+    }
+
+    private void updateEditor(int address) {
+        // Let the memory editor know, if any - it catches up at its own refresh rate
+        MemEdit e = editor;
+        if (e != null) {
+            e.memoryChanged(address >> 1);
         }
     }
 
     public void write(int address, BinData d0, BinData d1) {
+        write(address, BinValue.of(d0), BinValue.of(d1));
+    }
+
+    public void write(int address, BinValue d0, BinValue d1) {
         if (address <= MAX_ADDR) {
+            trace.write(address);
             address = address << 1;
 
-            store[address] = d0;
-            store[address | 1] = d1;
+            store(address, (byte) d0.getPacked());
+            store(address | 1, (byte) d1.getPacked());
 
             updateEditor(address);
         } else {
@@ -245,17 +453,107 @@ public class NRAM extends BaseModule {
         }
     }
 
-    public BinData[] read(int address) {
+    public BinValue[] read(int address) {
         if (address <= MAX_ADDR) {
             address = address << 1;
 
-            return new BinData[]{store[address], store[address | 1]};
+            return new BinValue[]{BinValue.fromPacked(load(address)), BinValue.fromPacked(load(address | 1))};
         } else {
             Logger.getLogger(NRAM.class.getName()).warning("NRAM tile index out of bounds.");
-            return new BinData[]{new BinData(), new BinData()};
+            return new BinValue[]{BinValue.NOCON, BinValue.NOCON};
+        }
+    }
+
+    /**
+     * Reads a byte, ignoring the connection mask (NOCON bits read as their hidden value, as BinValue.getUInt)
+     * @param address Address to read (0 to MAX_ADDR)
+     * @return The byte, high nibble from data B and low nibble from data A
+     */
+    public int getByte(int address) {
+        address = address << 1;
+        return ((load(address | 1) & 0xF) << 4) | (load(address) & 0xF);
+    }
+
+    /**
+     * Reads a range of bytes, as getByte
+     * @param address First address to read
+     * @param dst Array to read into
+     * @param off Offset into dst
+     * @param len Number of bytes to read
+     */
+    public void getBytes(int address, byte[] dst, int off, int len) {
+        if (address < 0 || len < 0 || address + len > MAX_ADDR + 1) {
+            throw new IndexOutOfBoundsException("NRAM range " + address + "+" + len + " out of bounds");
+        }
+
+        int i = 0;
+        while (i < len) {
+            int loc = (address + i) << 1;
+            byte[] page = pages[loc >> PAGE_SHIFT];
+
+            // Copy up to the end of the page, skipping straight over blank ones
+            int n = Math.min(len - i, ((PAGE_MASK + 1) - (loc & PAGE_MASK)) >> 1);
+            if (page == ZERO_PAGE) {
+                Arrays.fill(dst, off + i, off + i + n, (byte) 0);
+            }
+            else {
+                for (int j = loc & PAGE_MASK, k = off + i, e = k + n; k < e; j += 2, k++) {
+                    dst[k] = (byte) (((page[j | 1] & 0xF) << 4) | (page[j] & 0xF));
+                }
+            }
+            i += n;
         }
     }
 
+    /**
+     * Writes a range of bytes, all bits connected, then updates the editor once
+     * @param address First address to write
+     * @param src Array to write from
+     * @param off Offset into src
+     * @param len Number of bytes to write
+     */
+    public void setBytes(int address, byte[] src, int off, int len) {
+        if (address < 0 || len < 0 || address + len > MAX_ADDR + 1) {
+            throw new IndexOutOfBoundsException("NRAM range " + address + "+" + len + " out of bounds");
+        }
+
+        // A store from the simulation could otherwise clone the same shared page, losing one side's writes
+        synchronized (simLock()) {
+            for (int i = 0, loc = address << 1; i < len; i++, loc += 2) {
+                int b = src[off + i];
+                store(loc, (byte) (0xF0 | (b & 0xF)));
+                store(loc | 1, (byte) (0xF0 | ((b >> 4) & 0xF)));
+            }
+        }
+
+        if (len > 0) updateEditor(address << 1);
+    }
+
+    /**
+     * Turns counting of the module's reads and writes on or off. Counts carry on from where they were when it
+     * was last on.
+     * @param on Whether to count accesses
+     */
+    public void setTracing(boolean on) {
+        synchronized (simLock()) {
+            if (on && counter == null) {
+                counter = new AccessCounter();
+            }
+            trace = on ? counter : AccessTrace.OFF;
+        }
+    }
+
+    public boolean isTracing() {
+        return trace != AccessTrace.OFF;
+    }
+
+    /**
+     * @return The module's access counts, or null if tracing has never been on
+     */
+    public AccessCounter getAccessCounts() {
+        return counter;
+    }
+
     /**
      * Attaches an editor to the module
      * @param e Editor to attach
@@ -15,6 +15,7 @@ import com.modsim.modules.parts.Port;
 import com.modsim.modules.parts.SSText;
 import com.modsim.res.Fonts;
 import com.modsim.util.BinData;
+import com.modsim.util.BinValue;
 
 public class Or extends BaseModule {
 
@@ -75,26 +76,24 @@ public class Or extends BaseModule {
 
     @Override
     public void propagate() {
-        BinData res = new BinData();
-        res.setBit(0, BinData.LOW);
-        rLED.setEnabled(false);
+        // Only bit 0 of the result is connected
+        boolean high = false;
 
         for (int i = 0; i < passOut.size(); i++) {
-            passOut.get(i).setVal(dIn.get(i).getVal());
+            passOut.get(i).setVal(dIn.get(i).getValue());
 
-            byte v = passOut.get(i).getVal().getBit(0);
+            byte v = passOut.get(i).getValue().getBit(0);
             if (v == BinData.HIGH) {
-                res.setBit(0, BinData.HIGH);
-                rLED.setEnabled(true);
+                high = true;
             }
         }
 
-        if (chIn.getVal().getBit(0) == BinData.HIGH) {
-            res.setBit(0, BinData.HIGH);
-            rLED.setEnabled(true);
+        if (chIn.getValue().getBit(0) == BinData.HIGH) {
+            high = true;
         }
 
-        rOut.setVal(res);
+        rLED.setEnabled(high);
+        rOut.setVal(BinValue.of(high ? 1 : 0, 1));
     }
 
     @Override
@@ -10,6 +10,7 @@ import com.modsim.modules.ports.Output;
 import com.modsim.res.Colors;
 import com.modsim.res.Fonts;
 import com.modsim.util.BinData;
+import com.modsim.util.BinValue;
 import com.modsim.modules.parts.LEDRow;
 import com.modsim.modules.parts.Port;
 
@@ -23,7 +24,7 @@ import javax.swing.*;
 public class Register extends BaseModule {
 
     private LEDRow ledRow;
-    private BinData myData = new BinData(0);
+    private BinValue myData = BinValue.ZERO;
 
     private final Input dataIn;
     private final Output dataOut;
@@ -73,7 +74,7 @@ public class Register extends BaseModule {
     @Override
     public void propagate() {
         // Get control input
-        BinData controlVal = controlIn.getVal();
+        BinValue controlVal = controlIn.getValue();
 
         boolean clk = controlVal.getBooleanBit(0);
         boolean rst = controlVal.getBooleanBit(1);
@@ -81,10 +82,10 @@ public class Register extends BaseModule {
 
         // Store / reset the data
         if (rst) {
-            myData.setInt(0);
+            myData = BinValue.ZERO;
         }
         else if (clk && en) {
-            myData = dataIn.getVal();
+            myData = dataIn.getValue();
         }
 
         // Show it
@@ -96,15 +97,15 @@ public class Register extends BaseModule {
     }
 
     public void setStoredVal(BinData val) {
-        myData.set(val);
+        myData = BinValue.of(val);
     }
 
     public BinData getStoredVal() {
-        return new BinData(myData);
+        return myData.toBinData();
     }
 
     public void clear() {
-        myData = new BinData(0);
+        myData = BinValue.ZERO;
     }
 
     @Override
@@ -127,7 +128,7 @@ public class Register extends BaseModule {
                 boolean b1 = Integer.parseInt(str.substring(1, 2)) == 1;
                 boolean b2 = Integer.parseInt(str.substring(2, 3)) == 1;
                 boolean b3 = Integer.parseInt(str.substring(3)) == 1;
-                myData = new BinData(b0, b1, b2, b3); // note the order!
+                myData = BinValue.of(new BinData(b0, b1, b2, b3)); // note the order!
             }
             catch (Exception e) {
                 JOptionPane.showMessageDialog(null, "Corrupt/unrecognized SwitchInput data: " + e.getMessage());
@@ -11,6 +11,7 @@ import com.modsim.modules.ports.Output;
 import com.modsim.modules.parts.Port;
 import com.modsim.res.Colors;
 import com.modsim.util.BinData;
+import com.modsim.util.BinValue;
 
 public class Shift extends BaseModule {
 
@@ -85,49 +86,58 @@ public class Shift extends BaseModule {
     @Override
     public void propagate() {
         // Get the input values
-        byte[] chainOut = new byte[4];
-        chainOut[3] = BinData.NOCON;
+        BinValue control = controlIn.getValue();
+        BinValue data = dataIn.getValue();
+        BinValue chain = chainIn.getValue();
+        BinValue result;
+        int chainBits;
 
-        switch (controlIn.getVal().getBit(0)) {
+        switch (control.getBit(0)) {
             case 0:
                 // xxx0
-                chainOut[0] = dataIn.getVal().getBit(iSided(0));
-                chainOut[1] = dataIn.getVal().getBit(iSided(0));
-                chainOut[2] = dataIn.getVal().getBit(iSided(1));
-                switch (controlIn.getVal().getBit(1)) {
+                chainBits = bit(data, iSided(0)) | (bit(data, iSided(0)) << 1) | (bit(data, iSided(1)) << 2);
+                switch (control.getBit(1)) {
                     case 1:
                         // xx10
-                        dataOut.setVal(shift(dataIn.getVal(), 2, chainIn.getVal()));
+                        result = shift(data, 2, chain);
                         break;
                     default:
                         // xx00
-                        dataOut.setVal(dataIn.getVal());
+                        result = data;
                         break;
                 }
                 break;
             default:
                 // xxx1
-                chainOut[0] = dataIn.getVal().getBit(iSided(0));
-                chainOut[1] = dataIn.getVal().getBit(iSided(1));
-                chainOut[2] = dataIn.getVal().getBit(iSided(2));
-                switch (controlIn.getVal().getBit(1)) {
+                chainBits = bit(data, iSided(0)) | (bit(data, iSided(1)) << 1) | (bit(data, iSided(2)) << 2);
+                switch (control.getBit(1)) {
                     case 1:
                         // xx11
-                        dataOut.setVal(shift(dataIn.getVal(), 3, chainIn.getVal()));
+                        result = shift(data, 3, chain);
                         break;
                     default:
                         // xx01
-                        dataOut.setVal(shift(dataIn.getVal(), 1, chainIn.getVal()));
+                        result = shift(data, 1, chain);
                         break;
                 }
         }
 
-        shiftLEDs[0].setEnabled(controlIn.getVal().getBit(0) == BinData.HIGH);
-        shiftLEDs[1].setEnabled(controlIn.getVal().getBit(1) == BinData.HIGH);
-        dataLEDs.setVal(dataOut.getVal());
+        dataOut.setVal(result);
 
-        this.chainOut.setVal(new BinData(chainOut));
-        controlOut.setVal(controlIn.getVal());
+        shiftLEDs[0].setEnabled(control.getBit(0) == BinData.HIGH);
+        shiftLEDs[1].setEnabled(control.getBit(1) == BinData.HIGH);
+        dataLEDs.setVal(dataOut.getValue());
+
+        // The top chain bit is never connected, and reads low
+        this.chainOut.setVal(BinValue.ofUInt(chainBits));
+        controlOut.setVal(control);
+    }
+
+    /**
+     * A bit as 0 or 1, with NOCON reading as 0
+     */
+    private static int bit(BinValue v, int bit) {
+        return v.getBooleanBit(bit) ? 1 : 0;
     }
 
     private int iSided(int which) {
@@ -147,35 +157,29 @@ public class Shift extends BaseModule {
         }
     }
 
-    private BinData shift(BinData in, int dist, BinData chain) {
-        byte[] ret = in.getAll();
-
-        if (isLeftShift) {
-            System.arraycopy(ret, 0, ret, dist, ret.length - dist);
-        } else {
-            System.arraycopy(ret, dist, ret, 0, ret.length - dist);
-        }
+    private BinValue shift(BinValue in, int dist, BinValue chain) {
+        BinValue ret = isLeftShift ? in.shiftLeft(dist) : in.shiftRight(dist);
 
         // Set the missing bits according to chain
         switch (dist) {
             case 1:
-                ret[(isLeftShift ? 0 : 3)] = chain.getBit(0);
+                ret = ret.withBit((isLeftShift ? 0 : 3), bit(chain, 0));
                 break;
             case 3:
-                ret[(isLeftShift ? 2 : 1)] = chain.getBit(0);
+                ret = ret.withBit((isLeftShift ? 2 : 1), bit(chain, 0));
                 // Don't break here
             case 2:
                 if (isLeftShift) {
-                    ret[0] = chain.getBit(2);
-                    ret[1] = chain.getBit(1);
+                    ret = ret.withBit(0, bit(chain, 2));
+                    ret = ret.withBit(1, bit(chain, 1));
                 } else {
-                    ret[3] = chain.getBit(2);
-                    ret[2] = chain.getBit(1);
+                    ret = ret.withBit(3, bit(chain, 2));
+                    ret = ret.withBit(2, bit(chain, 1));
                 }
                 break;
         }
 
-        return new BinData(ret);
+        return ret;
     }
 
     @Override
@@ -11,8 +11,8 @@ public class LED extends TogglePart {
 	private Color color;
 	private Color hColor;
 
-	private int povTicks = 0;
-	private int povHits = 0;
+	// Whether the LED has been lit at any point since the last paint
+	private boolean povLit = false;
 
     // Convenience method, single LEDs are most commonly control.
     public LED(int x, int y) {
@@ -33,7 +33,7 @@ public class LED extends TogglePart {
 		g.setColor(Colors.ledBack);
 		g.fillRect(x-4, y-4, 8, 8);
 
-		if (getEnabled() || povHits > 0) {
+		if (getEnabled() || povLit) {
 			g.setColor(color);
             g.fillRect(x-4, y-4, 8, 8);
 			g.setColor(hColor);
@@ -44,15 +44,13 @@ public class LED extends TogglePart {
 			g.fillRect(x-2, y-2, 4, 4);
 		}
 
-		povTicks = 0;
-        povHits = 0;
+		povLit = false;
 	}
 
 	@Override
 	public void povTick() {
-		povTicks++;
 		if (getEnabled()) {
-			povHits++;
+			povLit = true;
 		}
 	}
 }
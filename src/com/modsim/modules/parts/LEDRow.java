@@ -6,6 +6,7 @@ import java.awt.Graphics2D;
 import com.modsim.res.Colors;
 import com.modsim.res.Colors.LEDColour;
 import com.modsim.util.BinData;
+import com.modsim.util.BinValue;
 
 /**
  * Row of four LEDs (for data display)
@@ -19,10 +20,10 @@ public class LEDRow extends VisiblePart {
 	private Color color = Color.BLUE;
 	private Color hColor = Color.BLUE;
 
-	private volatile BinData curVal = new BinData(0);
+	private volatile BinValue curVal = BinValue.ZERO;
 
-	private int povTicks = 0;
-	private int povHits[] = new int[NLEDS];
+	// Bits lit at any point since the last paint
+	private int povLit = 0;
 
     // Convenience method, LEDRow is usually data.
     public LEDRow(int x, int y) {
@@ -42,14 +43,22 @@ public class LEDRow extends VisiblePart {
 	 * @param v
 	 */
 	public void setVal(BinData v) {
-		curVal.set(v);
+		curVal = BinValue.of(v);
+	}
+
+	/**
+	 * Set next value to display
+	 * @param v
+	 */
+	public void setVal(BinValue v) {
+		curVal = v;
 	}
 
 	/**
 	 * Get current display value
 	 * @return
 	 */
-	public BinData getVal() {
+	public BinValue getVal() {
 		return curVal;
 	}
 
@@ -59,11 +68,11 @@ public class LEDRow extends VisiblePart {
 		g.setColor(Colors.ledBack);
 		g.fillRect(x-15, y-3, 30, 6);
 
-		BinData v = getVal();
+		BinValue v = getVal();
 		for (int i = 0; i < NLEDS; i++) {
 			int offs = x+(1-i)*8;
 
-			if (v.getBit(i) == 1 || povHits[i] > 0) {
+			if (v.getBit(i) == 1 || ((povLit >> i) & 1) != 0) {
 				g.setColor(color);
 				g.fillRect(offs+1, y-3, 6, 6);
 				g.setColor(hColor);
@@ -75,25 +84,13 @@ public class LEDRow extends VisiblePart {
 			}
 		}
 
-		resetPov();
+		povLit = 0;
 	}
 
 	@Override
 	public void povTick() {
-		povTicks++;
-		BinData v = getVal();
-		for (int i = 0; i < NLEDS; i++) {
-			if (v.getBit(i) == 1) {
-				povHits[i]++;
-			}
-		}
-	}
-
-	private void resetPov() {
-		povTicks = 0;
-		for (int i = 0; i < NLEDS; i++) {
-			povHits[i] = 0;
-		}
+		BinValue v = getVal();
+		povLit |= v.getUInt() & v.getMask();
 	}
 
     @Override
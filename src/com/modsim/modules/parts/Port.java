@@ -2,7 +2,9 @@ package com.modsim.modules.parts;
 
 import com.modsim.modules.BaseModule;
 import com.modsim.modules.Link;
+import com.modsim.simulator.SignalStore;
 import com.modsim.util.BinData;
+import com.modsim.util.BinValue;
 import com.modsim.util.Vec2;
 
 public abstract class Port {
@@ -37,10 +39,26 @@ public abstract class Port {
 	public String text;
 	public int pos = 0;
 
-	protected BinData value = new BinData();
+    // The port's value, packed as (mask << 4) | value. Held in the simulator's signal store while the
+    // owning module is part of the design, and locally otherwise.
+    private SignalStore store = null;
+    private int slot = -1;
+    private byte local = 0;
 
     public boolean updated = false;
 
+    /**
+     * Position in the owner's port list, which indexes its module type's dependency table
+     */
+    public int index = -1;
+
+    /**
+     * Loop checking bookkeeping, maintained by the simulator: the port's position in the design's topological
+     * order (-1 until it's first linked), and the search in which it was last visited
+     */
+    public int topoOrder = -1;
+    public int topoVisit = -1;
+
     /**
      * Get the port's ID
      * @return The ID
@@ -49,6 +67,54 @@ public abstract class Port {
         return ID;
     }
 
+    /**
+     * Moves the port's value into a signal store
+     * @param s Store to move into
+     */
+    public void attach(SignalStore s) {
+        if (store == s) return;
+
+        int packed = getStored();
+        if (store != null) detach();
+
+        slot = s.alloc();
+        store = s;
+        s.set(slot, packed);
+    }
+
+    /**
+     * Moves the port's value out of its signal store, releasing the slot
+     */
+    public void detach() {
+        if (store == null) return;
+
+        local = (byte) store.get(slot);
+        store.release(slot);
+        store = null;
+        slot = -1;
+    }
+
+    /**
+     * The raw stored value, as (mask << 4) | value
+     */
+    protected final int getStored() {
+        return store != null ? store.get(slot) : local & 0xFF;
+    }
+
+    /**
+     * Packs binary data into the signal store's format
+     */
+    public static int pack(BinData d) {
+        return ((d.mask & 0xF) << 4) | (d.val & 0xF);
+    }
+
+    /**
+     * Whether two packed values hold the same signal (matches BinData.equals)
+     */
+    public static boolean samePacked(int a, int b) {
+        return (a & 0xF0) == (b & 0xF0) && (((a ^ b) & (a >> 4)) & 0xF) == 0;
+    }
+
     /**
      * Value set. Registers output as updated
      * if value is changed.
@@ -56,8 +122,18 @@ public abstract class Port {
      * it was different to the last stored value)
      */
     public boolean setVal(BinData val) {
-        if (!val.equals(value)) {
-            value = new BinData(val);
+        return setPacked(pack(val));
+    }
+
+    /**
+     * Allocation-free value set, as setVal
+     * @param packed New value, as (mask << 4) | value
+     * @return True if the value was changed
+     */
+    public boolean setPacked(int packed) {
+        if (!samePacked(packed, getStored())) {
+            if (store != null) store.set(slot, packed);
+            else local = (byte) packed;
             updated = true;
             return true;
         }
@@ -74,13 +150,51 @@ public abstract class Port {
         return updated;
     }
 
+    /**
+     * Value set, as setVal(BinData)
+     */
+    public boolean setVal(BinValue val) {
+        return setPacked(val.getPacked());
+    }
+
+    /**
+     * Allocation-free value retrieval, as getVal
+     */
+    public BinValue getValue() {
+        return BinValue.fromPacked(getPacked());
+    }
+
 	/**
 	 * Value retrieval
 	 */
 	public BinData getVal() {
-		return new BinData(value);
+		int packed = getPacked();
+		return new BinData((byte) (packed & 0xF), (byte) (packed >> 4));
 	}
 
+    /**
+     * Allocation-free value retrieval, as getVal
+     * @return The value, as (mask << 4) | value
+     */
+    public int getPacked() {
+        return getStored();
+    }
+
+    /**
+     * Gets the value as an unsigned integer, as getVal().getUInt()
+     * Ignores mask (!)
+     */
+    public final int getUInt() {
+        return getPacked() & 0xF;
+    }
+
+    /**
+     * Gets the value's connection mask (set bits are connected)
+     */
+    public final int getMask() {
+        return (getPacked() >> 4) & 0xF;
+    }
+
 	/**
 	 * Retrieves the object-space position of the port
 	 * @return Port's object-space position
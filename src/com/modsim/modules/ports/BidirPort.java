@@ -2,7 +2,6 @@ package com.modsim.modules.ports;
 
 import com.modsim.modules.BaseModule;
 import com.modsim.modules.parts.Port;
-import com.modsim.util.BinData;
 
 /**
  * Created by awick on 15/09/2015.
@@ -53,12 +52,12 @@ public class BidirPort extends Port {
     }
 
     @Override
-    public boolean setVal(BinData val) {
+    public boolean setPacked(int packed) {
         boolean retVal = false;
         switch (mode) {
             case MODE_INPUT:
             case MODE_OUTPUT:
-                retVal = super.setVal(val);
+                retVal = super.setPacked(packed);
                 break;
         }
 
@@ -66,12 +65,12 @@ public class BidirPort extends Port {
     }
 
     @Override
-    public BinData getVal() {
-        BinData retVal = new BinData();
+    public int getPacked() {
+        int retVal = 0;
         switch (mode) {
             case MODE_INPUT:
             case MODE_OUTPUT:
-                retVal.set(super.getVal());
+                retVal = super.getPacked();
                 break;
         }
 
@@ -108,12 +107,7 @@ public class BidirPort extends Port {
     }
 
 	public boolean isConnected() {
-		BinData data = this.getVal();
-		for(int i = 0; i<4; i++)
-		{
-			if(data.getBit(i)!=BinData.NOCON) return true;
-		}
-		return false;
+		return getMask() != 0;
 	}
 
 }
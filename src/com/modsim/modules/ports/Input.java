@@ -17,14 +17,15 @@ public class Input extends Port {
     }
 
     @Override
-    public BinData getVal() {
+    public int getPacked() {
         if (link != null) {
-            BinData v = super.getVal();
-            v.resolvePull(pull);
-            return v;
+            // Resolve pull: NOCON bits take the pull value
+            int v = getStored();
+            int mask = v >> 4;
+            return 0xF0 | (v & mask & 0xF) | (~mask & pull.val & 0xF);
         }
         else {
-            return pull;
+            return pack(pull);
         }
     }
 
@@ -4,6 +4,7 @@ import com.modsim.Main;
 import com.modsim.gui.HelpWindow;
 import com.modsim.modules.BaseModule;
 import com.modsim.simulator.PickableEntity;
+import com.modsim.simulator.Sim;
 import com.modsim.tools.PlaceTool;
 import com.modsim.util.XMLReader;
 import com.modsim.util.XMLWriter;
@@ -15,6 +16,7 @@ import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.io.File;
 import java.io.FilenameFilter;
+import java.text.DecimalFormat;
 import java.util.prefs.Preferences;
 
 /**
@@ -136,7 +138,7 @@ public class Ops {
     // Core application actions
     public static final DesignAction undo, redo, copy, paste, delete, rotateCW, rotateCCW, rotate180,
             labelEdit, labelBig, labelSmall,
-            pause, run, step, toggleRun, zoomIn, zoomOut, resetView, toggleAA, open, save, saveAs, fileNew, quit;
+            pause, run, step, toggleRun, turbo, engineEvent, engineCompiled, engineParallel, zoomIn, zoomOut, resetView, toggleAA, open, save, saveAs, fileNew, quit;
 
     static {
         // Keyboard shortcuts
@@ -263,6 +265,16 @@ public class Ops {
             Main.sim.stop();
             Main.sim.step();
         }, "Step Simulation", "Steps the simulation forward by one iteration", period);
+        turbo = new DesignAction(event -> Main.sim.setTurbo(!Main.sim.isTurbo()),
+                "Turbo mode", "Run as fast as possible, ignoring the speed setting: many steps are run between " +
+                "screen updates");
+        engineEvent = new DesignAction(event -> Main.sim.setEngine(Sim.Engine.EVENT_DRIVEN),
+                "Event-driven", "Propagate changes from module to module as they occur");
+        engineCompiled = new DesignAction(event -> Main.sim.setEngine(Sim.Engine.COMPILED),
+                "Compiled", "Evaluate a levelized netlist in order: faster for large designs, " +
+                "recompiled automatically after edits");
+        engineParallel = new DesignAction(event -> Main.sim.setEngine(Sim.Engine.PARALLEL),
+                "Parallel", "As compiled, but independent parts of the design are simulated on separate cores");
         
         //Zoom controls
         zoomIn = new DesignAction(event -> Main.ui.zoomInToView(), "Zoom In");
@@ -306,6 +318,17 @@ public class Ops {
         Main.ui.view.flagStaticRedraw();
     }
 
+    /**
+     * Target simulation speed for a position of the speed slider: 1 tick/s at 0, ten times faster every 10
+     * steps, and unlimited at the top
+     * @param val Slider position (0 to 60)
+     * @return Ticks per second, or 0 for unlimited
+     */
+    public static double sliderRate(int val) {
+        if (val >= 60) return 0;
+        return Math.pow(10, val / 10.0);
+    }
+
     /**
      * Handler for adjusting the simulation speed by slider
      */
@@ -314,9 +337,11 @@ public class Ops {
         public void stateChanged(ChangeEvent e) {
             // Adjust sim speed
             JSlider src = (JSlider) e.getSource();
-            int val = src.getValue();
-            long delay = (long) Math.pow(1.35, 60 - val);
-            com.modsim.simulator.Sim.delay = delay -1;
+            double rate = sliderRate(src.getValue());
+            Main.sim.pacer.setTargetRate(rate);
+
+            DecimalFormat df = new DecimalFormat("#.#");
+            src.setToolTipText(rate > 0 ? "Target: " + df.format(rate) + " ticks/s" : "Target: unlimited");
         }
     };
 
@@ -0,0 +1,259 @@
+package com.modsim.simulator;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.modsim.modules.BaseModule;
+import com.modsim.modules.BaseModule.AvailableModules;
+import com.modsim.modules.Link;
+import com.modsim.modules.parts.Port;
+
+/**
+ * A flattened, levelized snapshot of the design for the compiled propagation engine.
+ * Modules are numbered and topologically sorted, with the graph broken at registers and NRAM (the same
+ * boundaries loop checking treats as terminators), and the links are stored as flat arrays so that
+ * evaluation is a sweep over the schedule rather than a walk of the object graph.
+ */
+class CompiledNetlist {
+
+    private final BaseModule[] modules;
+
+    // Module indices in evaluation order, and the inverse (module index -> position in the order)
+    private final int[] order;
+    private final int[] position;
+
+    // Outgoing links, grouped by source module (CSR: module i owns edges edgeStart[i] to edgeStart[i+1])
+    private final int[] edgeStart;
+    private final Port[] edgeSrc;
+    private final Port[] edgeTarg;
+    private final int[] edgeTargModule;
+
+    // Ports of each module, grouped the same way
+    private final int[] portStart;
+    private final Port[] ports;
+
+    // Modules awaiting evaluation, with their positions in the order kept in a binary min-heap so that a
+    // settle only visits what changed
+    private final boolean[] dirty;
+    private final int[] heap;
+    private int pending = 0;
+
+    /**
+     * Compiles the given modules and links. Caller must hold both the module lists
+     * (synchronized (Main.sim)) and the sim lock.
+     * @param moduleList Modules in the design
+     * @param linkList Links between them
+     */
+    CompiledNetlist(List<BaseModule> moduleList, List<Link> linkList) {
+        int n = moduleList.size();
+        modules = moduleList.toArray(new BaseModule[n]);
+
+        Map<BaseModule, Integer> index = new IdentityHashMap<>();
+        for (int i = 0; i < n; i++) {
+            modules[i].netIndex = i;
+            index.put(modules[i], i);
+        }
+
+        // Gather the valid links by source module
+        List<List<Link>> outLinks = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            outLinks.add(new ArrayList<Link>());
+        }
+
+        int edges = 0;
+        for (Link l : linkList) {
+            if (l == null || l.src == null || l.targ == null) continue;
+            Integer s = index.get(l.src.owner);
+            Integer t = index.get(l.targ.owner);
+            if (s == null || t == null) continue;
+
+            outLinks.get(s).add(l);
+            edges++;
+        }
+
+        edgeStart = new int[n + 1];
+        edgeSrc = new Port[edges];
+        edgeTarg = new Port[edges];
+        edgeTargModule = new int[edges];
+
+        int e = 0;
+        for (int i = 0; i < n; i++) {
+            edgeStart[i] = e;
+            for (Link l : outLinks.get(i)) {
+                edgeSrc[e] = l.src;
+                edgeTarg[e] = l.targ;
+                edgeTargModule[e] = index.get(l.targ.owner);
+                e++;
+            }
+        }
+        edgeStart[n] = e;
+
+        // Flatten the port lists
+        int portCount = 0;
+        for (BaseModule m : modules) {
+            portCount += m.ports.size();
+        }
+
+        portStart = new int[n + 1];
+        ports = new Port[portCount];
+        int p = 0;
+        for (int i = 0; i < n; i++) {
+            portStart[i] = p;
+            for (Port port : modules[i].ports) {
+                ports[p++] = port;
+            }
+        }
+        portStart[n] = p;
+
+        // Levelize (Kahn's algorithm), ignoring edges out of the state-holding modules
+        int[] inDegree = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (breaksLevels(modules[i])) continue;
+            for (int j = edgeStart[i]; j < edgeStart[i + 1]; j++) {
+                inDegree[edgeTargModule[j]]++;
+            }
+        }
+
+        order = new int[n];
+        int head = 0, tail = 0;
+        for (int i = 0; i < n; i++) {
+            if (inDegree[i] == 0) order[tail++] = i;
+        }
+
+        while (head < tail) {
+            int i = order[head++];
+            if (breaksLevels(modules[i])) continue;
+
+            for (int j = edgeStart[i]; j < edgeStart[i + 1]; j++) {
+                int t = edgeTargModule[j];
+                if (--inDegree[t] == 0) order[tail++] = t;
+            }
+        }
+
+        // Whatever's left is part of a module-level cycle that doesn't exist at port level (e.g. through an
+        // OR's pass-throughs). Those go at the end - the sweeps below still settle them correctly.
+        if (tail < n) {
+            for (int i = 0; i < n; i++) {
+                if (inDegree[i] > 0) order[tail++] = i;
+            }
+        }
+
+        position = new int[n];
+        for (int k = 0; k < n; k++) {
+            position[order[k]] = k;
+        }
+
+        dirty = new boolean[n];
+        heap = new int[n];
+    }
+
+    /**
+     * Whether the module's outputs start a new level (i.e. it terminates loops)
+     */
+    private static boolean breaksLevels(BaseModule m) {
+        AvailableModules type = m.getModType();
+        return type == AvailableModules.RAM || type == AvailableModules.REGISTER;
+    }
+
+    /**
+     * Whether the module is part of this netlist
+     */
+    boolean contains(BaseModule m) {
+        int i = m.netIndex;
+        return i >= 0 && i < modules.length && modules[i] == m;
+    }
+
+    /**
+     * Marks a module for evaluation on the next settle()
+     */
+    void markDirty(BaseModule m) {
+        mark(m.netIndex);
+    }
+
+    private void mark(int i) {
+        if (dirty[i]) return;
+        dirty[i] = true;
+
+        // Sift the module's position up the heap
+        int pos = position[i];
+        int c = pending++;
+        while (c > 0) {
+            int parent = (c - 1) >> 1;
+            if (heap[parent] <= pos) break;
+            heap[c] = heap[parent];
+            c = parent;
+        }
+        heap[c] = pos;
+    }
+
+    /**
+     * Removes the earliest dirty position from the heap
+     */
+    private int takeFirst() {
+        int top = heap[0];
+        int last = heap[--pending];
+
+        // Sift the last entry down from the root
+        int c = 0;
+        while (true) {
+            int child = 2 * c + 1;
+            if (child >= pending) break;
+            if (child + 1 < pending && heap[child + 1] < heap[child]) child++;
+            if (heap[child] >= last) break;
+            heap[c] = heap[child];
+            c = child;
+        }
+        heap[c] = last;
+
+        return top;
+    }
+
+    /**
+     * Evaluates dirty modules in level order, taking further sweeps while changes feed back through registers
+     * or NRAM to earlier levels. Modules marked dirty during the settle (by nested propagations) are picked up
+     * by the same mechanism.
+     * @return Null on success, or the module at which a runtime loop was detected
+     */
+    BaseModule settle() {
+        int n = order.length;
+        int sweeps = 1;
+        int prev = -1;
+        int feedback = -1;
+
+        while (pending > 0) {
+            int k = takeFirst();
+            int i = order[k];
+            dirty[i] = false;
+
+            // Going back up the order starts a new sweep - no acyclic design needs more sweeps than it has modules
+            if (k <= prev && ++sweeps > n + 1 && feedback >= 0) {
+                while (pending > 0) {
+                    dirty[order[takeFirst()]] = false;
+                }
+                return modules[feedback];
+            }
+            prev = k;
+
+            modules[i].propagate();
+
+            // Carry changed outputs across links
+            for (int e = edgeStart[i], end = edgeStart[i + 1]; e < end; e++) {
+                Port src = edgeSrc[e];
+                if (src.updated && edgeTarg[e].setPacked(src.getPacked())) {
+                    int t = edgeTargModule[e];
+                    if (position[t] <= k) feedback = i;
+                    mark(t);
+                }
+            }
+
+            for (int p = portStart[i], end = portStart[i + 1]; p < end; p++) {
+                ports[p].updated = false;
+            }
+        }
+
+        return null;
+    }
+
+}
@@ -0,0 +1,202 @@
+package com.modsim.simulator;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.modsim.modules.BaseModule;
+import com.modsim.modules.BaseModule.AvailableModules;
+import com.modsim.modules.Clock;
+import com.modsim.modules.Link;
+
+/**
+ * The design split into independent partitions for the parallel propagation engine.
+ * A partition is a connected group of modules (following links in either direction), so no two partitions
+ * can affect each other and each one can be stepped on its own thread. Each is compiled and settled exactly
+ * as the compiled engine would, with its clocks ticked in the same relative order, so the results are
+ * identical to serial stepping.
+ */
+class ParallelNetlist {
+
+    // Partitions too small to be worth a task of their own are stepped together
+    private static final int MIN_TASK_MODULES = 256;
+
+    private final CompiledNetlist[] parts;
+    private final BaseModule[][] roots;
+    private final BaseModule[] looped;
+
+    // Running total of module counts, for splitting the work evenly (part i covers weight[i] to weight[i+1])
+    private final int[] weight;
+
+    private final Map<BaseModule, CompiledNetlist> partOf = new IdentityHashMap<>();
+
+    /**
+     * Partitions and compiles the design. Caller must hold both the module lists (synchronized (Main.sim))
+     * and the sim lock.
+     * @param moduleList Modules in the design
+     * @param linkList Links between them
+     * @param propList Modules propagation starts from on each step, in order
+     */
+    ParallelNetlist(List<BaseModule> moduleList, List<Link> linkList, List<BaseModule> propList) {
+        int n = moduleList.size();
+
+        Map<BaseModule, Integer> index = new IdentityHashMap<>();
+        for (int i = 0; i < n; i++) {
+            index.put(moduleList.get(i), i);
+        }
+
+        // Union-find over the links
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+        }
+
+        for (Link l : linkList) {
+            if (l == null || l.src == null || l.targ == null) continue;
+            Integer s = index.get(l.src.owner);
+            Integer t = index.get(l.targ.owner);
+            if (s == null || t == null) continue;
+
+            int a = find(parent, s), b = find(parent, t);
+            if (a != b) parent[Math.max(a, b)] = Math.min(a, b);
+        }
+
+        // Number the partitions in module order, so the layout doesn't depend on anything but the design
+        int[] partNum = new int[n];
+        List<List<BaseModule>> partModules = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            int root = find(parent, i);
+            if (root == i) {
+                partNum[i] = partModules.size();
+                partModules.add(new ArrayList<BaseModule>());
+            }
+            else {
+                partNum[i] = partNum[root];
+            }
+            partModules.get(partNum[i]).add(moduleList.get(i));
+        }
+
+        int count = partModules.size();
+        List<List<Link>> partLinks = new ArrayList<>(count);
+        List<List<BaseModule>> partRoots = new ArrayList<>(count);
+        for (int p = 0; p < count; p++) {
+            partLinks.add(new ArrayList<Link>());
+            partRoots.add(new ArrayList<BaseModule>());
+        }
+
+        for (Link l : linkList) {
+            if (l == null || l.src == null || l.targ == null) continue;
+            Integer s = index.get(l.src.owner);
+            if (s == null || !index.containsKey(l.targ.owner)) continue;
+
+            partLinks.get(partNum[s]).add(l);
+        }
+
+        for (BaseModule m : propList) {
+            Integer i = index.get(m);
+            if (i != null) partRoots.get(partNum[i]).add(m);
+        }
+
+        parts = new CompiledNetlist[count];
+        roots = new BaseModule[count][];
+        looped = new BaseModule[count];
+        weight = new int[count + 1];
+
+        for (int p = 0; p < count; p++) {
+            parts[p] = new CompiledNetlist(partModules.get(p), partLinks.get(p));
+            roots[p] = partRoots.get(p).toArray(new BaseModule[0]);
+            weight[p + 1] = weight[p] + partModules.get(p).size();
+
+            for (BaseModule m : partModules.get(p)) {
+                partOf.put(m, parts[p]);
+            }
+        }
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Gets the compiled partition holding a module
+     * @return The partition, or null if the module isn't part of the design
+     */
+    CompiledNetlist partOf(BaseModule m) {
+        return partOf.get(m);
+    }
+
+    /**
+     * Ticks the clocks and settles every partition, spreading the partitions over the pool.
+     * Must be called while holding the sim lock.
+     * @param pool Pool to run on
+     * @param loops Receives the modules at which runtime loops were detected, in partition order
+     */
+    void step(ForkJoinPool pool, List<BaseModule> loops) {
+        if (weight[parts.length] <= MIN_TASK_MODULES) {
+            stepParts(0, parts.length);
+        }
+        else {
+            pool.invoke(new StepTask(0, parts.length));
+        }
+
+        for (int p = 0; p < looped.length; p++) {
+            if (looped[p] != null) {
+                loops.add(looped[p]);
+                looped[p] = null;
+            }
+        }
+    }
+
+    private void stepParts(int from, int to) {
+        for (int p = from; p < to; p++) {
+            CompiledNetlist part = parts[p];
+
+            for (BaseModule m : roots[p]) {
+                if (m.getModType() == AvailableModules.CLOCK) {
+                    ((Clock) m).tick();
+                }
+
+                part.markDirty(m);
+                BaseModule bad = part.settle();
+                if (bad != null && looped[p] == null) looped[p] = bad;
+            }
+        }
+    }
+
+    /**
+     * Steps a range of partitions, halving the range until it's small enough to run directly
+     */
+    private class StepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+
+        StepTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1 || weight[to] - weight[from] <= MIN_TASK_MODULES) {
+                stepParts(from, to);
+                return;
+            }
+
+            // Split by weight rather than count, so one big partition doesn't drag its neighbours along
+            int half = (weight[from] + weight[to]) / 2;
+            int mid = from + 1;
+            while (mid < to - 1 && weight[mid] < half) mid++;
+
+            invokeAll(new StepTask(from, mid), new StepTask(mid, to));
+        }
+    }
+
+}
@@ -0,0 +1,442 @@
+package com.modsim.simulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.modsim.modules.BaseModule;
+import com.modsim.modules.BaseModule.AvailableModules;
+import com.modsim.modules.Link;
+import com.modsim.modules.parts.Port;
+
+/**
+ * Dynamic topological order of the linked ports in the design (Pearce-Kelly), used to reject links that would
+ * close a loop. Every connection - along a link, or through a module from an input to an output it affects -
+ * runs from a lower Port.topoOrder to a higher one. A new link which already runs forwards needs no work;
+ * otherwise only the ports positioned between its ends are searched and reordered, and the link is a loop
+ * exactly when its target reaches its source among them.
+ * Registers and NRAM terminate loops, so nothing is followed through them. Ports are followed by the
+ * direction of their links rather than their current modes, which a split/merge's direction propagation can
+ * change after the link is made, so the order only has to change when links are added. Removing a link
+ * can't invalidate it.
+ * Links added in bulk are ordered all at once instead (see rebuild), with a single pass over the whole design.
+ */
+class PortOrder {
+
+    private static final Comparator<Port> BY_ORDER = Comparator.comparingInt(p -> p.topoOrder);
+
+    private int next = 0;
+    private int epoch = 0;
+
+    // The link being inserted, and how many of its connections are visible to the searches (see insert)
+    private Link pending = null;
+    private int stage = 0;
+
+    // Search state, reused between insertions
+    private final List<Port> forward = new ArrayList<>();
+    private final List<Port> backward = new ArrayList<>();
+    private final List<Port> adjacent = new ArrayList<>();
+    private final List<Port> seeds = new ArrayList<>();
+    private final Map<Port, Port> parent = new IdentityHashMap<>();
+    private Port[] stack = new Port[64];
+    private int depth = 0;
+    private int[] pool = new int[64];
+
+    /**
+     * Orders a newly made link, which must already be referenced by its ports
+     * @param l The link
+     * @param loop (out) Modules forming the loop, if one is found. May be null.
+     * @return False if the link creates a loop, in which case it must be abandoned
+     */
+    boolean insert(Link l, List<BaseModule> loop) {
+        Port src = l.src, targ = l.targ;
+        assign(src.owner);
+        assign(targ.owner);
+
+        pending = l;
+        try {
+            // The source port is new to the graph: move it after the inputs that affect it
+            stage = 1;
+            epoch++;
+            collectPredecessors(src);
+            seeds.addAll(adjacent);
+            for (Port p : seeds) {
+                if (p.topoOrder > src.topoOrder && p.topoVisit != epoch) {
+                    searchBackward(p, src.topoOrder);
+                }
+            }
+            if (!backward.isEmpty()) {
+                forward.add(src);
+                reorder();
+            }
+
+            // Likewise the target port, before the outputs it affects
+            stage = 2;
+            epoch++;
+            seeds.clear();
+            collectSuccessors(targ);
+            seeds.addAll(adjacent);
+            for (Port p : seeds) {
+                if (p.topoOrder < targ.topoOrder && p.topoVisit != epoch) {
+                    searchForward(p, targ.topoOrder, null);
+                }
+            }
+            if (!forward.isEmpty()) {
+                backward.add(targ);
+                reorder();
+            }
+
+            // Then the link itself
+            stage = 3;
+            if (src.topoOrder < targ.topoOrder) return true;
+
+            epoch++;
+            if (searchForward(targ, src.topoOrder, src)) {
+                if (loop != null) {
+                    for (Port p = src; p != null; p = parent.get(p)) {
+                        if (p.link != null && p.link.targ == p && !loop.contains(p.owner)) {
+                            loop.add(p.owner);
+                        }
+                    }
+                }
+                return false;
+            }
+            searchBackward(src, targ.topoOrder);
+            reorder();
+            return true;
+        }
+        finally {
+            pending = null;
+            forward.clear();
+            backward.clear();
+            adjacent.clear();
+            seeds.clear();
+            parent.clear();
+        }
+    }
+
+    /**
+     * Recomputes the order for the whole design in one pass, for when many links have been added at once. The
+     * strongly connected components of the port graph are found (Tarjan), and the design's ports renumbered in
+     * topological order. Links inside a component close loops: they're taken out, then put back one at a time as
+     * by insert, so that only those which actually close a loop (in list order) are rejected, as if the links had
+     * been made one by one.
+     * @param modules Every module in the design
+     * @param links Every link in the design, referenced by their ports
+     * @param loop (out) Modules forming the loops, if any are found. May be null.
+     * @return The links rejected for closing loops, no longer referenced by their ports
+     */
+    List<Link> rebuild(List<BaseModule> modules, List<Link> links, List<BaseModule> loop) {
+        List<Port> ports = new ArrayList<>();
+        for (BaseModule m : modules) {
+            ports.addAll(m.ports);
+        }
+
+        int[] comp = order(ports);
+        int base = next - ports.size();
+
+        List<Link> looped = new ArrayList<>();
+        for (Link l : links) {
+            if (l.src.link == l && isSource(l.src)
+                    && comp[l.src.topoOrder - base] == comp[l.targ.topoOrder - base]) {
+                looped.add(l);
+            }
+        }
+
+        List<Link> rejected = new ArrayList<>();
+        if (looped.isEmpty()) return rejected;
+
+        // Order what's left, which is now acyclic, then retry the links one by one
+        for (Link l : looped) {
+            l.src.link = null;
+            l.targ.link = null;
+        }
+        order(ports);
+
+        for (Link l : looped) {
+            l.src.link = l;
+            l.targ.link = l;
+            if (!insert(l, loop)) {
+                l.src.link = null;
+                l.targ.link = null;
+                rejected.add(l);
+            }
+        }
+
+        return rejected;
+    }
+
+    /**
+     * Numbers the ports in topological order of their strongly connected components, continuing from the last
+     * position handed out so that ports outside the design (e.g. of deleted modules) keep distinct positions
+     * @param ports Every port in the design
+     * @return The component of each port, indexed by its position less the first position given out
+     */
+    private int[] order(List<Port> ports) {
+        int n = ports.size();
+
+        // Number the ports, and build the connection graph
+        for (int i = 0; i < n; i++) {
+            ports.get(i).topoOrder = i;
+        }
+
+        int[] start = new int[n + 1];
+        int[] edges = new int[Math.max(n, 16)];
+        int e = 0;
+        for (int i = 0; i < n; i++) {
+            start[i] = e;
+            collectSuccessors(ports.get(i));
+            for (int j = 0; j < adjacent.size(); j++) {
+                if (e == edges.length) edges = Arrays.copyOf(edges, e * 2);
+                edges[e++] = adjacent.get(j).topoOrder;
+            }
+        }
+        start[n] = e;
+        adjacent.clear();
+
+        // Tarjan, iteratively. Components complete in reverse topological order.
+        int[] index = new int[n];
+        int[] low = new int[n];
+        int[] comp = new int[n];
+        int[] edge = new int[n];
+        int[] callStack = new int[n];
+        int[] compStack = new int[n];
+        int[] finished = new int[n];
+        boolean[] onStack = new boolean[n];
+        Arrays.fill(index, -1);
+
+        int counter = 0, comps = 0, done = 0;
+        int sp = 0, csp = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) continue;
+
+            index[root] = low[root] = counter++;
+            edge[root] = start[root];
+            compStack[csp++] = root;
+            onStack[root] = true;
+            callStack[sp++] = root;
+
+            while (sp > 0) {
+                int v = callStack[sp - 1];
+
+                if (edge[v] < start[v + 1]) {
+                    int w = edges[edge[v]++];
+                    if (index[w] < 0) {
+                        index[w] = low[w] = counter++;
+                        edge[w] = start[w];
+                        compStack[csp++] = w;
+                        onStack[w] = true;
+                        callStack[sp++] = w;
+                    }
+                    else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+
+                sp--;
+                if (sp > 0) {
+                    int u = callStack[sp - 1];
+                    low[u] = Math.min(low[u], low[v]);
+                }
+
+                if (low[v] == index[v]) {
+                    int w;
+                    do {
+                        w = compStack[--csp];
+                        onStack[w] = false;
+                        comp[w] = comps;
+                        finished[done++] = w;
+                    } while (w != v);
+                    comps++;
+                }
+            }
+        }
+
+        // Last finished first
+        int base = next;
+        for (int k = 0; k < n; k++) {
+            ports.get(finished[k]).topoOrder = base + (n - 1 - k);
+        }
+        next += n;
+
+        int[] byOrder = new int[n];
+        for (int i = 0; i < n; i++) {
+            byOrder[ports.get(i).topoOrder - base] = comp[i];
+        }
+        return byOrder;
+    }
+
+    /**
+     * Gives a module's ports their initial positions, if they don't have them yet - inputs first, as
+     * connections run from them to the outputs
+     */
+    private void assign(BaseModule m) {
+        for (Port p : m.ports) {
+            if (p.topoOrder < 0 && p.canInput()) p.topoOrder = next++;
+        }
+        for (Port p : m.ports) {
+            if (p.topoOrder < 0) p.topoOrder = next++;
+        }
+    }
+
+    /**
+     * Depth-first search along connections from start, through ports positioned before limit.
+     * Visited ports are added to the forward set.
+     * @param stop Port to look out for, or null
+     * @return Whether stop was reached
+     */
+    private boolean searchForward(Port start, int limit, Port stop) {
+        start.topoVisit = epoch;
+        push(start);
+
+        while (depth > 0) {
+            Port p = stack[--depth];
+            forward.add(p);
+
+            collectSuccessors(p);
+            for (int i = 0; i < adjacent.size(); i++) {
+                Port q = adjacent.get(i);
+                if (q == stop) {
+                    parent.put(q, p);
+                    depth = 0;
+                    return true;
+                }
+                if (q.topoVisit != epoch && q.topoOrder < limit) {
+                    q.topoVisit = epoch;
+                    if (stop != null) parent.put(q, p);
+                    push(q);
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Depth-first search against connections from start, through ports positioned after limit.
+     * Visited ports are added to the backward set.
+     */
+    private void searchBackward(Port start, int limit) {
+        start.topoVisit = epoch;
+        push(start);
+
+        while (depth > 0) {
+            Port p = stack[--depth];
+            backward.add(p);
+
+            collectPredecessors(p);
+            for (int i = 0; i < adjacent.size(); i++) {
+                Port q = adjacent.get(i);
+                if (q.topoVisit != epoch && q.topoOrder > limit) {
+                    q.topoVisit = epoch;
+                    push(q);
+                }
+            }
+        }
+    }
+
+    private void push(Port p) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = p;
+    }
+
+    /**
+     * Reassigns the positions held by the searched ports, placing the backward set before the forward set
+     */
+    private void reorder() {
+        backward.sort(BY_ORDER);
+        forward.sort(BY_ORDER);
+
+        int n = backward.size() + forward.size();
+        if (pool.length < n) {
+            pool = new int[Math.max(n, pool.length * 2)];
+        }
+
+        int k = 0;
+        for (Port p : backward) pool[k++] = p.topoOrder;
+        for (Port p : forward) pool[k++] = p.topoOrder;
+        Arrays.sort(pool, 0, n);
+
+        k = 0;
+        for (Port p : backward) p.topoOrder = pool[k++];
+        for (Port p : forward) p.topoOrder = pool[k++];
+
+        backward.clear();
+        forward.clear();
+    }
+
+    /**
+     * Whether the port is the source of a link (which both of its ends still refer to)
+     */
+    private static boolean isSource(Port p) {
+        Link l = p.link;
+        return l != null && l.src == p && l.targ.link == l;
+    }
+
+    /**
+     * Whether the port is the target of a link (which both of its ends still refer to)
+     */
+    private static boolean isTarget(Port p) {
+        Link l = p.link;
+        return l != null && l.targ == p && l.src.link == l;
+    }
+
+    /**
+     * Whether connections are followed through the module
+     */
+    private static boolean passes(BaseModule m) {
+        AvailableModules type = m.getModType();
+        return type != AvailableModules.RAM && type != AvailableModules.REGISTER;
+    }
+
+    /**
+     * Gathers the ports a port connects to into the adjacent list. The pending link's connections are only
+     * included once their stage is reached.
+     */
+    private void collectSuccessors(Port p) {
+        adjacent.clear();
+
+        if (isSource(p)) {
+            if (p.link != pending || stage >= 3) adjacent.add(p.link.targ);
+        }
+        else if (isTarget(p) && passes(p.owner)) {
+            if (p.link == pending && stage < 2) return;
+            List<Port> ports = p.owner.ports;
+            for (long m = p.owner.getAffectedMask(p); m != 0; m &= m - 1) {
+                Port o = ports.get(Long.numberOfTrailingZeros(m));
+                if (isSource(o) && (o.link != pending || stage >= 1)) {
+                    adjacent.add(o);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gathers the ports connecting to a port into the adjacent list
+     */
+    private void collectPredecessors(Port p) {
+        adjacent.clear();
+
+        if (isTarget(p)) {
+            if (p.link != pending || stage >= 3) adjacent.add(p.link.src);
+        }
+        else if (isSource(p) && passes(p.owner)) {
+            if (p.link == pending && stage < 1) return;
+            List<Port> ports = p.owner.ports;
+            for (long m = p.owner.getAffectingMask(p); m != 0; m &= m - 1) {
+                Port i = ports.get(Long.numberOfTrailingZeros(m));
+                if (isTarget(i) && (i.link != pending || stage >= 2)) {
+                    adjacent.add(i);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.modsim.simulator;
+
+import java.util.Arrays;
+
+/**
+ * Holds the values of every port in the design, one byte per port.
+ * Each byte packs a 4-bit value and its 4-bit connection mask as (mask << 4) | value, the same information
+ * held by a BinData. Ports are given a slot when their module is added to the simulation, and hand it back
+ * when the module is removed.
+ */
+public class SignalStore {
+
+    private byte[] signals = new byte[1024];
+
+    // Released slots, reused before the array grows
+    private int[] free = new int[64];
+    private int freeCount = 0;
+    private int next = 0;
+
+    /**
+     * Allocates a slot for a port
+     * @return Index of the slot
+     */
+    public int alloc() {
+        if (freeCount > 0) return free[--freeCount];
+
+        if (next == signals.length) {
+            signals = Arrays.copyOf(signals, signals.length * 2);
+        }
+        return next++;
+    }
+
+    /**
+     * Returns a slot for reuse
+     * @param slot Index of the slot
+     */
+    public void release(int slot) {
+        signals[slot] = 0;
+
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, free.length * 2);
+        }
+        free[freeCount++] = slot;
+    }
+
+    /**
+     * Drops every slot
+     */
+    public void clear() {
+        signals = new byte[1024];
+        freeCount = 0;
+        next = 0;
+    }
+
+    /**
+     * Retrieves a packed value
+     * @param slot Index of the slot
+     * @return The value, as (mask << 4) | value
+     */
+    public int get(int slot) {
+        return signals[slot] & 0xFF;
+    }
+
+    /**
+     * Stores a packed value
+     * @param slot Index of the slot
+     * @param packed The value, as (mask << 4) | value
+     */
+    public void set(int slot, int packed) {
+        signals[slot] = (byte) packed;
+    }
+
+    /**
+     * The number of slots in use
+     */
+    public int size() {
+        return next - freeCount;
+    }
+
+}
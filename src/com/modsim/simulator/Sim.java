@@ -2,9 +2,10 @@ package com.modsim.simulator;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.swing.JOptionPane;
 
@@ -12,7 +13,7 @@ import com.modsim.Main;
 import com.modsim.modules.*;
 import static com.modsim.modules.BaseModule.AvailableModules;
 import com.modsim.modules.parts.Port;
-import sun.awt.Mutex;
+import com.modsim.modules.parts.VisiblePart;
 
 import com.modsim.util.BinData;
 import com.modsim.util.CtrlPt;
@@ -20,13 +21,16 @@ import com.modsim.util.CtrlPt;
 public class Sim implements Runnable {
 
     private Thread thread;
-    public final Mutex lock = new Mutex();
+    // Held while stepping/propagating (only ever used as a monitor)
+    public final Object lock = new Object();
 
     private int lastLinkInd = 0;
 
-    public static long delay = 2500000;
     public volatile boolean running = false;
 
+    // Paces the sim thread to the target speed
+    public final TickPacer pacer = new TickPacer(30);
+
     public String filePath = "";
 
     // Module list
@@ -35,6 +39,9 @@ public class Sim implements Runnable {
     private final List<Link> links = new ArrayList<>();
     private final List<PickableEntity> entities = new ArrayList<>();
 
+    // Port values
+    private final SignalStore signals = new SignalStore();
+
     public double itrPerSec = 0;
     public int iterations = 0;
 
@@ -42,8 +49,135 @@ public class Sim implements Runnable {
     private List<BaseModule> deferredPropagators = new ArrayList<>();
     private int deferring = 0;
 
-    private Queue<QueueItem> propagationQueue;
-    
+    // Propagation worklist - reused between propagations so that stepping doesn't allocate
+    private BaseModule[] worklist = new BaseModule[256];
+    private int worklistHead = 0, worklistTail = 0;
+    private boolean propagating = false;
+
+    // Propagation engine, and the compiled netlist it uses (rebuilt lazily after edits to the design)
+    private volatile Engine engine = Engine.EVENT_DRIVEN;
+    private volatile CompiledNetlist netlist = null;
+    private volatile ParallelNetlist parallelNetlist = null;
+    private volatile boolean netlistStale = true, parallelStale = true;
+    private final List<BaseModule> loops = new ArrayList<>();
+
+    // Turbo mode: steps run in batches, sized to hold the lock for about TURBO_HOLD_NANOS at a time
+    private static final long TURBO_HOLD_NANOS = 1000000;
+    private static final int TURBO_MAX_BATCH = 1 << 20;
+    private volatile boolean turbo = false;
+    private int turboBatch = 1;
+
+    // Topological order of the linked ports, for rejecting links that would create loops
+    private final PortOrder portOrder = new PortOrder();
+
+    // Parts with persistence-of-vision data, gathered lazily after modules are added or removed
+    private volatile VisiblePart[] povParts = new VisiblePart[0];
+    private volatile boolean povStale = true;
+
+    // Incremented for each propagation, used to lazily reset the per-module and per-link bookkeeping
+    private int epoch = 0;
+    // The number of distinct modules reached during the current propagation
+    private int reached = 0;
+
+    /**
+     * Available propagation engines
+     */
+    public enum Engine {
+        /**
+         * Follows changes from module to module as they happen
+         */
+        EVENT_DRIVEN("Event-driven"),
+        /**
+         * Evaluates a levelized, precompiled netlist in topological order
+         */
+        COMPILED("Compiled"),
+        /**
+         * Compiled, with independent parts of the design stepped on separate cores
+         */
+        PARALLEL("Parallel");
+
+        private final String name;
+
+        Engine(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Gets the propagation engine in use
+     */
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Selects the propagation engine. Takes effect from the next propagation.
+     */
+    public void setEngine(Engine engine) {
+        // The compiled and partitioned netlists share the modules' netIndex field, so whichever is used next
+        // has to be rebuilt to renumber them
+        if (engine != this.engine) {
+            netlistStale = parallelStale = true;
+        }
+        this.engine = engine;
+    }
+
+    /**
+     * Gets the compiled netlist, recompiling it if the design has changed since it was last built
+     */
+    private CompiledNetlist getNetlist() {
+        if (netlistStale || netlist == null) {
+            synchronized (this) {
+                if (netlistStale || netlist == null) {
+                    // Edits take the module lists, so none can slip in between here and the compile. The lock
+                    // keeps the module indices stable for any propagation using the old netlist.
+                    netlistStale = false;
+                    synchronized (lock) {
+                        netlist = new CompiledNetlist(modules, links);
+                    }
+                }
+            }
+        }
+        return netlist;
+    }
+
+    /**
+     * Gets the partitioned netlist, recompiling it if the design has changed since it was last built
+     */
+    private ParallelNetlist getParallelNetlist() {
+        if (parallelStale || parallelNetlist == null) {
+            synchronized (this) {
+                if (parallelStale || parallelNetlist == null) {
+                    parallelStale = false;
+                    synchronized (lock) {
+                        parallelNetlist = new ParallelNetlist(modules, links, propModules);
+                    }
+                }
+            }
+        }
+        return parallelNetlist;
+    }
+
+    /**
+     * Gets the netlist a module should be propagated through by the current engine
+     * @return The netlist, or null for the event-driven engine
+     */
+    private CompiledNetlist getNetlist(BaseModule m) {
+        switch (engine) {
+            case COMPILED:
+                return getNetlist();
+            case PARALLEL:
+                return getParallelNetlist().partOf(m);
+            default:
+                return null;
+        }
+    }
+
     /**
      * Begin deferring propagation operations (preventing errors during large-scale operations)
      */
@@ -59,11 +193,9 @@ public class Sim implements Runnable {
         assert(deferring >= 0);
 
         if (deferring == 0) {
-            for (BaseModule m : deferredPropagators) {
-                propagate(m);
-            }
-
+            List<BaseModule> deferred = new ArrayList<>(deferredPropagators);
             deferredPropagators.clear();
+            propagate(deferred);
         }
     }
 
@@ -86,6 +218,7 @@ public class Sim implements Runnable {
         clearErrors();
         running = false;
         itrPerSec = 0;
+        pacer.wake();
     }
 
     // Grid size
@@ -94,21 +227,32 @@ public class Sim implements Runnable {
     // New simulation
     public void newSim() {
         // Reset the camera position
-        Main.ui.view.camX = 0;
-        Main.ui.view.camY = 0;
+        if (Main.ui != null) {
+            Main.ui.view.camX = 0;
+            Main.ui.view.camY = 0;
+        }
 
         synchronized (this) {
+            synchronized (lock) {
+                for (BaseModule m : modules) {
+                    for (Port p : m.ports) {
+                        p.detach();
+                    }
+                }
+                signals.clear();
+            }
+
             modules.clear();
             links.clear();
             propModules.clear();
             entities.clear();
+            netlistStale = parallelStale = povStale = true;
 
             Main.opStack.clearAll();
             filePath = "";
-            Main.ui.updateTitle();
+            if (Main.ui != null) Main.ui.updateTitle();
         }
-		propagationQueue = new LinkedList<QueueItem>();
-        Main.ui.view.flagStaticRedraw();
+        if (Main.ui != null) Main.ui.view.flagStaticRedraw();
     }
 
     /**
@@ -144,7 +288,13 @@ public class Sim implements Runnable {
 
             if (ent.getType() == PickableEntity.MODULE) {
                 BaseModule m = (BaseModule) ent;
+                synchronized (lock) {
+                    for (Port p : m.ports) {
+                        p.attach(signals);
+                    }
+                }
                 modules.add(m);
+                netlistStale = parallelStale = povStale = true;
                 if (m.getModType() == AvailableModules.CLOCK) {
                     propModules.add(m);
                 }
@@ -165,12 +315,20 @@ public class Sim implements Runnable {
                 BaseModule module = (BaseModule) ent;
                 modules.remove(ent);
                 propModules.remove(ent);
+                netlistStale = parallelStale = povStale = true;
 
                 for (Port p : module.ports) {
                     if (p.link != null) {
                         p.link.delete();
                     }
                 }
+
+                // Kept out of the store while it's not in the design (it may come back, e.g. by undo)
+                synchronized (lock) {
+                    for (Port p : module.ports) {
+                        p.detach();
+                    }
+                }
             }
         }
     }
@@ -182,6 +340,12 @@ public class Sim implements Runnable {
         synchronized (this) {
             clearErrors();
             links.add(l);
+            netlistStale = parallelStale = povStale = true;
+
+            // Links restored by undo/redo skip Link.createLink, so are ordered here
+            if (!portOrder.insert(l, null)) {
+                System.err.println("Warning: Link added to the simulation creates a loop");
+            }
 
             for (CtrlPt c : l.path.getCtrlPts()) {
                 addEntity(c);
@@ -189,6 +353,82 @@ public class Sim implements Runnable {
         }
     }
 
+    /**
+     * Adds modules and links to the design in one go, e.g. when loading a design or pasting. The whole design is
+     * checked for loops in a single pass rather than link by link, and the new modules are settled by a single
+     * propagation (deferred along with any others, if propagations are being deferred).
+     * @param newModules Modules to add
+     * @param newLinks Links between them (or to modules already in the design), made by Link.createBulk. Links
+     *                 since replaced at their ports by later ones are left out.
+     * @return The links left out because they would have created loops
+     */
+    public List<Link> addAll(List<BaseModule> newModules, List<Link> newLinks) {
+        List<Link> rejected;
+
+        synchronized (this) {
+            clearErrors();
+
+            synchronized (lock) {
+                for (BaseModule m : newModules) {
+                    for (Port p : m.ports) {
+                        p.attach(signals);
+                    }
+                }
+            }
+            for (BaseModule m : newModules) {
+                modules.add(m);
+                entities.add(m);
+                if (m.getModType() == AvailableModules.CLOCK) {
+                    propModules.add(m);
+                }
+            }
+
+            List<Link> added = new ArrayList<>();
+            for (Link l : newLinks) {
+                if (l.src.link == l && l.targ.link == l) {
+                    added.add(l);
+                }
+            }
+            links.addAll(added);
+            netlistStale = parallelStale = povStale = true;
+
+            List<BaseModule> loop = new ArrayList<>();
+            rejected = portOrder.rebuild(modules, links, loop);
+            if (!rejected.isEmpty()) {
+                System.err.println("Warning: " + rejected.size() + " link(s) left out for creating loops");
+                links.removeAll(rejected);
+                added.removeAll(rejected);
+                for (Link l : rejected) {
+                    l.targ.setVal(new BinData());
+                }
+                for (BaseModule m : loop) {
+                    m.error = true;
+                }
+            }
+
+            for (Link l : added) {
+                entities.addAll(l.path.getCtrlPts());
+            }
+        }
+
+        propagate(newModules);
+        return rejected;
+    }
+
+    /**
+     * Checks whether a new link would create a loop - i.e. whether any output it affects feeds back to its
+     * source without passing through a register or NRAM. If not, the link is taken into the ordering used for
+     * subsequent checks.
+     * @param l The link, already referenced by its ports
+     * @param loop (out) Modules forming the loop, if one is found
+     * @return Whether the link creates a loop
+     */
+    public boolean checkLoops(Link l, List<BaseModule> loop) {
+        synchronized (this) {
+            return !portOrder.insert(l, loop);
+        }
+    }
+
     /**
      * Yields a unique ID for a link
      */
@@ -202,6 +442,7 @@ public class Sim implements Runnable {
     public void removeLink(Link l) {
         synchronized (this) {
             links.remove(l);
+            netlistStale = parallelStale = povStale = true;
         }
         l.src.link = null;
         l.targ.setVal(new BinData());
@@ -217,63 +458,144 @@ public class Sim implements Runnable {
     }
 
     public void run() {
-        int iterations = 0;
-        long start = System.currentTimeMillis();
+        pacer.reset();
+        boolean wasTurbo = false;
 
-        // Runs the sim constantly
+        // Runs the sim constantly, at the pace set by the speed control
         while(running) {
-            // Iterate
-            step();
+            boolean turbo = this.turbo;
+            if (wasTurbo && !turbo) pacer.reset();
+            wasTurbo = turbo;
+
+            if (turbo) {
+                // As fast as possible, adapting the batch size to the time it takes
+                long start = System.nanoTime();
+                int done = stepBatch(turboBatch);
+                long elapsed = System.nanoTime() - start;
+
+                if (elapsed < TURBO_HOLD_NANOS / 2) {
+                    turboBatch = Math.min(turboBatch * 2, TURBO_MAX_BATCH);
+                }
+                else if (elapsed > TURBO_HOLD_NANOS * 2) {
+                    turboBatch = Math.max(turboBatch / 2, 1);
+                }
 
-            // Calculate speed
-            iterations++;
-            long now = System.currentTimeMillis();
-            long delta = now - start;
-
-            if (delta > 1000) {
-                itrPerSec = iterations;
-                iterations = 0;
-                start = now;
+                pacer.ticked(done);
             }
+            else {
+                int ticks = pacer.awaitBatch();
+
+                int done = 0;
+                while (done < ticks && running) {
+                    step();
+                    done++;
+                }
 
-            // Speed control
-            if (delay != 0) {
-                nanoWait(delay);
+                pacer.ticked(done);
             }
+
+            // Calculate speed
+            itrPerSec = pacer.getAchievedRate();
         }
     }
 
     /**
-     * Nanosecond(ish)-accurate wait
+     * @return Whether the sim thread runs in turbo mode
      */
-    private void nanoWait(long interval) {
-        int ms = (int) (interval / 100000);
-        try {Thread.sleep(ms);}
-        catch (Exception e) {
-            System.err.println("Warning: thread sleep exception!");
-        }
-
-        interval = interval % 100000;
-
-        long start = System.nanoTime();
-        long end;
+    public boolean isTurbo() {
+        return turbo;
+    }
 
-        do {
-            end = System.nanoTime();
-        } while (start + interval >= end);
+    /**
+     * Turbo mode runs steps as fast as possible, many to each hold of the lock, ignoring the target speed.
+     * The view is only notified once per frame.
+     */
+    public void setTurbo(boolean turbo) {
+        this.turbo = turbo;
+        pacer.wake();
     }
 
     /**
      * Recursive simulation
      */
     public void step() {
+        Engine engine = this.engine;
+        CompiledNetlist net = engine == Engine.COMPILED ? getNetlist() : null;
+        ParallelNetlist parallel = engine == Engine.PARALLEL ? getParallelNetlist() : null;
+
         synchronized (lock) {
             // Don't run while we're deferring operations
             if (deferring != 0) return;
 
-            //System.out.print("\nIteration " + iterations + " : ");
-            iterations++;
+            tick(net, parallel);
+        }
+
+        // Request view update
+        if (Main.ui != null) Main.ui.view.flagDynamicRedraw();
+    }
+
+    /**
+     * Runs several steps under a single hold of the lock. Persistence-of-vision data is gathered after each
+     * step, and the view is only asked to repaint at the end (if a frame is due).
+     * @param count Number of steps to run
+     * @return Number of steps run - fewer than asked if the simulation was halted by a runtime loop
+     */
+    public int stepBatch(int count) {
+        Engine engine = this.engine;
+        CompiledNetlist net = engine == Engine.COMPILED ? getNetlist() : null;
+        ParallelNetlist parallel = engine == Engine.PARALLEL ? getParallelNetlist() : null;
+        VisiblePart[] pov = Main.ui != null ? getPovParts() : null;
+
+        int done = 0;
+        synchronized (lock) {
+            // Don't run while we're deferring operations
+            if (deferring != 0) return 0;
+
+            boolean wasRunning = running;
+            while (done < count) {
+                tick(net, parallel);
+                done++;
+
+                if (pov != null) {
+                    for (VisiblePart p : pov) {
+                        p.povTick();
+                    }
+                }
+
+                // Stopped by a runtime loop
+                if (wasRunning && !running) break;
+            }
+        }
+
+        // Request view update
+        if (Main.ui != null) Main.ui.view.requestFrame();
 
+        return done;
+    }
+
+    /**
+     * Ticks the clocks and propagates. Caller must hold the lock.
+     */
+    private void tick(CompiledNetlist net, ParallelNetlist parallel) {
+        //System.out.print("\nIteration " + iterations + " : ");
+        iterations++;
+
+        if (parallel != null) {
+            // Independent parts of the design step concurrently
+            propagating = true;
+            try {
+                parallel.step(ForkJoinPool.commonPool(), loops);
+            }
+            finally {
+                propagating = false;
+            }
+
+            for (BaseModule m : loops) {
+                loopDetected(m);
+            }
+            loops.clear();
+        }
+        else {
             for (int i = 0; i < propModules.size(); i++) {
                 BaseModule m = propModules.get(i);
 
@@ -283,62 +605,114 @@ public class Sim implements Runnable {
                 }
 
                 // Begin propagation at the clocks AND switches
-                propagate(m);
+                propagate(m, net);
             }
         }
+    }
 
-        // Request view update
-        Main.ui.view.flagDynamicRedraw();
+    /**
+     * Updates the persistence-of-vision data of every part in the design
+     */
+    public void povTick() {
+        for (VisiblePart p : getPovParts()) {
+            p.povTick();
+        }
+    }
+
+    /**
+     * Gets the parts that track persistence-of-vision, gathering them again if the design has changed.
+     * Must not be called while holding the lock.
+     */
+    private VisiblePart[] getPovParts() {
+        if (povStale) {
+            synchronized (this) {
+                if (povStale) {
+                    List<VisiblePart> parts = new ArrayList<>();
+                    for (BaseModule m : modules) {
+                        for (VisiblePart p : m.parts) {
+                            if (p.getRefreshMode() == VisiblePart.RefreshMode.Dynamic) {
+                                parts.add(p);
+                            }
+                        }
+                    }
+                    povParts = parts.toArray(new VisiblePart[parts.size()]);
+                    povStale = false;
+                }
+            }
+        }
+        return povParts;
     }
 
     /**
-     * Thread-local propagation
+     * Evaluates a module taken from the worklist and queues the targets of any changed outputs
      * @param m Module to propagate on
-     * @param visited ID-indexed array indicating whether we've already propagated over each module
+     * @return False if a runtime loop was detected, in which case the propagation should be abandoned
      */
-    private void doPropagate(BaseModule m, boolean[] visited) {
-        if (deferring != 0) {
-            deferredPropagators.add(m);
+    private boolean doPropagate(BaseModule m) {
+        if (m.propEpoch != epoch) {
+            m.propEpoch = epoch;
+            reached++;
         }
-        else {
-            if (m == null) return;
-            m.propagate();
 
-            for (Port p : m.ports) {
-                if (!p.canOutput()) {
-                    p.updated = false;
-                    continue;
-                }
-                if (p.wasUpdated() && p.link != null) {
-                    // First make sure 'visited' array is big enough
-                    int id = p.link.getLinkID();
-                    if (id >= visited.length) {
-                        visited = Arrays.copyOf(visited, id * 2 + 1);
-                    }
+        m.propagate();
 
-                    // Check if we've visited this link before
-                    if (visited[id]) {
-                        p.owner.error = true;
-                        running = false;
-                        JOptionPane.showMessageDialog(null, "Runtime loop detected! Halting simulation. Did you forget a register?");
-                        return;
-                    }
+        List<Port> ports = m.ports;
+        for (int i = 0, n = ports.size(); i < n; i++) {
+            Port p = ports.get(i);
 
-                    // Recursively propagate
-                    if (p.link.targ == null) {
-                        System.out.println("Warning: Null propagation target");
-                        return;
-                    }
-                    p.link.targ.setVal(p.getVal());
+            if (!p.canOutput()) {
+                p.updated = false;
+                continue;
+            }
+            if (p.wasUpdated() && p.link != null) {
+                Link l = p.link;
+
+                // An acyclic design can't carry more changes down a link than there are modules on the paths
+                // leading to it, so anything beyond that means we're going round a loop
+                if (l.propEpoch != epoch) {
+                    l.propEpoch = epoch;
+                    l.propCount = 0;
+                }
+                if (++l.propCount > reached) {
+                    loopDetected(p.owner);
+                    return false;
+                }
 
-                    // Add link to visited - remove after propagation
-                    boolean[] clone = visited.clone();
-                    clone[id] = true;
-                    propagationQueue.add(new QueueItem(p.link.targ.owner, clone));
+                if (l.targ == null) {
+                    System.out.println("Warning: Null propagation target");
+                    return true;
                 }
-                p.updated = false;
+                l.targ.setPacked(p.getPacked());
+                enqueue(l.targ.owner);
             }
+            p.updated = false;
         }
+
+        return true;
+    }
+
+    /**
+     * Adds a module to the worklist, unless it's already waiting to be propagated
+     * @param m Module to queue
+     */
+    private void enqueue(BaseModule m) {
+        if (m.propQueued) return;
+
+        if (worklistTail == worklist.length) {
+            if (worklistHead > 0) {
+                // Reclaim the space at the front
+                System.arraycopy(worklist, worklistHead, worklist, 0, worklistTail - worklistHead);
+                Arrays.fill(worklist, worklistTail - worklistHead, worklistTail, null);
+                worklistTail -= worklistHead;
+                worklistHead = 0;
+            }
+            else {
+                worklist = Arrays.copyOf(worklist, worklist.length * 2);
+            }
+        }
+
+        m.propQueued = true;
+        worklist[worklistTail++] = m;
     }
 
     /**
@@ -346,22 +720,153 @@ public class Sim implements Runnable {
      * @param m Module to propagate
      */
     public void propagate(BaseModule m) {
+        if (m == null) return;
+
+        // Compile before taking the lock - the module lists must always be taken first
+        CompiledNetlist net = getNetlist(m);
+
         synchronized (lock) {
-        	propagationQueue.add(new QueueItem(m, new boolean[1024]));
-        	while(!propagationQueue.isEmpty()){
-        		QueueItem it = propagationQueue.remove();
-        		doPropagate(it.baseModule, it.visited);
-        	}
-        }
-    }
-    
-    class QueueItem {
-    	private BaseModule baseModule;
-    	private boolean[] visited;
-    	public QueueItem(BaseModule m, boolean[] v){
-    		baseModule = m;
-    		visited = v;
-    	}
-    }
-    
+            propagate(m, net);
+        }
+    }
+
+    /**
+     * Propagates through several modules at once, settling the design in a single propagation
+     * @param ms Modules to propagate
+     */
+    public void propagate(List<BaseModule> ms) {
+        if (ms.isEmpty()) return;
+
+        // Compile before taking the lock - the module lists must always be taken first
+        CompiledNetlist[] nets = new CompiledNetlist[ms.size()];
+        for (int i = 0; i < nets.length; i++) {
+            nets[i] = getNetlist(ms.get(i));
+        }
+
+        synchronized (lock) {
+            if (deferring != 0 || propagating) {
+                for (int i = 0; i < nets.length; i++) {
+                    propagate(ms.get(i), nets[i]);
+                }
+                return;
+            }
+
+            propagating = true;
+            epoch++;
+            reached = 0;
+
+            try {
+                // Each netlist involved settles once, with all of its modules marked
+                Set<CompiledNetlist> dirty = new LinkedHashSet<>();
+                for (int i = 0; i < nets.length; i++) {
+                    BaseModule m = ms.get(i);
+                    CompiledNetlist net = nets[i];
+
+                    if (net != null && net.contains(m)) {
+                        net.markDirty(m);
+                        dirty.add(net);
+                    }
+                    else {
+                        enqueue(m);
+                    }
+                }
+
+                for (CompiledNetlist net : dirty) {
+                    BaseModule looped = net.settle();
+                    if (looped != null) {
+                        loopDetected(looped);
+                        return;
+                    }
+                }
+
+                drainWorklist();
+            }
+            finally {
+                clearWorklist();
+                propagating = false;
+            }
+        }
+    }
+
+    /**
+     * Propagates through a module, using the compiled netlist where the module is part of it.
+     * Must be called while holding the lock.
+     * @param m Module to propagate
+     * @param net Compiled netlist, or null to use the event-driven engine
+     */
+    private void propagate(BaseModule m, CompiledNetlist net) {
+        if (deferring != 0) {
+            deferredPropagators.add(m);
+            return;
+        }
+
+        boolean compiled = net != null && net.contains(m);
+
+        // Nested propagations just join the one already in progress
+        if (propagating) {
+            if (compiled) net.markDirty(m);
+            else enqueue(m);
+            return;
+        }
+
+        propagating = true;
+        epoch++;
+        reached = 0;
+
+        try {
+            if (compiled) {
+                net.markDirty(m);
+                BaseModule looped = net.settle();
+                if (looped != null) {
+                    loopDetected(looped);
+                    return;
+                }
+            }
+            else {
+                enqueue(m);
+            }
+
+            drainWorklist();
+        }
+        finally {
+            clearWorklist();
+            propagating = false;
+        }
+    }
+
+    /**
+     * Propagates through the modules on the worklist until it's empty, or a runtime loop halts the propagation
+     */
+    private void drainWorklist() {
+        while (worklistHead != worklistTail) {
+            BaseModule next = worklist[worklistHead];
+            worklist[worklistHead++] = null;
+            next.propQueued = false;
+
+            if (!doPropagate(next)) break;
+        }
+    }
+
+    /**
+     * Empties the worklist, dropping anything left over after a halt
+     */
+    private void clearWorklist() {
+        while (worklistHead != worklistTail) {
+            worklist[worklistHead++].propQueued = false;
+        }
+        worklistHead = worklistTail = 0;
+    }
+
+    /**
+     * Flags the module where a runtime loop was found and halts the simulation
+     */
+    private void loopDetected(BaseModule m) {
+        m.error = true;
+        running = false;
+
+        String message = "Runtime loop detected! Halting simulation. Did you forget a register?";
+        if (Main.ui != null) JOptionPane.showMessageDialog(null, message);
+        else System.err.println(message);
+    }
+
 }
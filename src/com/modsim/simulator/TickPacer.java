@@ -0,0 +1,160 @@
+package com.modsim.simulator;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces the simulation thread to a target rate, in ticks per second.
+ * The thread parks until each tick is due instead of spinning. Targets faster than the timer can reliably
+ * sleep for are met by running ticks in batches, one batch per wakeup, so the rate holds on average.
+ */
+public class TickPacer {
+
+    /**
+     * Shortest time worth parking for - faster targets are met by batching
+     */
+    public static final long MIN_PARK_NANOS = 1000000;
+
+    // How far behind schedule to fall before the backlog is dropped rather than run in a burst
+    private static final long MAX_LAG_NANOS = 100000000;
+
+    // Period over which the achieved rate is measured
+    private static final long MEASURE_NANOS = 1000000000;
+
+    private volatile double targetRate;
+    private volatile boolean replan = true;
+    private volatile Thread waiter = null;
+
+    // Schedule: ticks per wakeup, the time they cover, and when the next batch is due
+    private int batch = 1;
+    private long batchNanos = 0;
+    private long deadline = 0;
+
+    // Rate measurement
+    private long windowStart = System.nanoTime();
+    private long windowTicks = 0;
+    private volatile double achievedRate = 0;
+
+    /**
+     * @param targetRate Initial target, in ticks per second (zero or less for unlimited)
+     */
+    public TickPacer(double targetRate) {
+        this.targetRate = targetRate;
+    }
+
+    /**
+     * @return The target rate, in ticks per second (zero or less for unlimited)
+     */
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    /**
+     * Sets the target rate. Takes effect immediately, even if the thread is waiting.
+     * @param rate Ticks per second (zero or less for unlimited)
+     */
+    public void setTargetRate(double rate) {
+        targetRate = rate;
+        replan = true;
+        wake();
+    }
+
+    /**
+     * @return Whether ticks are run as fast as possible
+     */
+    public boolean isUnlimited() {
+        double rate = targetRate;
+        return rate <= 0 || Double.isInfinite(rate);
+    }
+
+    /**
+     * @return The rate measured over the last second, in ticks per second
+     */
+    public double getAchievedRate() {
+        return achievedRate;
+    }
+
+    /**
+     * Wakes the paced thread early, e.g. so that it notices the sim has stopped
+     */
+    public void wake() {
+        Thread t = waiter;
+        if (t != null) LockSupport.unpark(t);
+    }
+
+    /**
+     * Restarts the schedule and rate measurement
+     */
+    public void reset() {
+        replan = true;
+        windowStart = System.nanoTime();
+        windowTicks = 0;
+        achievedRate = 0;
+    }
+
+    /**
+     * Waits until the next batch of ticks is due. Called from the paced thread only.
+     * @return Number of ticks to run now
+     */
+    public int awaitBatch() {
+        long now = System.nanoTime();
+
+        if (replan) {
+            replan = false;
+            plan();
+            deadline = now;
+        }
+
+        // Unlimited
+        if (batchNanos == 0) return batch;
+
+        // Running slower than the target - catch up, but not indefinitely
+        if (now - deadline > MAX_LAG_NANOS) {
+            deadline = now;
+        }
+
+        waiter = Thread.currentThread();
+        long wait;
+        while ((wait = deadline - now) > 0 && !replan) {
+            LockSupport.parkNanos(this, wait);
+            now = System.nanoTime();
+        }
+        waiter = null;
+
+        if (replan) return awaitBatch();
+
+        deadline += batchNanos;
+        return batch;
+    }
+
+    /**
+     * Records ticks that have been run, for the achieved rate
+     * @param ticks Number of ticks
+     */
+    public void ticked(int ticks) {
+        windowTicks += ticks;
+
+        long now = System.nanoTime();
+        long elapsed = now - windowStart;
+        if (elapsed >= MEASURE_NANOS) {
+            achievedRate = windowTicks * 1e9 / elapsed;
+            windowTicks = 0;
+            windowStart = now;
+        }
+    }
+
+    /**
+     * Works out the batch size for the current target
+     */
+    private void plan() {
+        if (isUnlimited()) {
+            batch = 1;
+            batchNanos = 0;
+            return;
+        }
+
+        double period = 1e9 / targetRate;
+        batch = (int) Math.max(1, Math.ceil(MIN_PARK_NANOS / period));
+        batchNanos = Math.max(1, Math.round(batch * period));
+    }
+
+}
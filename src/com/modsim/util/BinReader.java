@@ -0,0 +1,80 @@
+package com.modsim.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.swing.JOptionPane;
+
+import com.modsim.Main;
+import com.modsim.modules.NRAM;
+
+/**
+ * Loads raw binary images (one byte per address, as produced by an assembler) into NRAM
+ */
+public class BinReader {
+
+    /**
+     * Reads a binary file into the module from address 0, replacing its contents
+     */
+    public static void readFile(File binFile, NRAM nram) {
+        if (nram == null) {
+            JOptionPane.showMessageDialog(null, "No NRAM module present");
+            return;
+        }
+
+        try {
+            nram.clear();
+            read(binFile, nram, 0, -1, 0);
+
+            // Propagate change
+            Main.sim.propagate(nram);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(null, "Unable to read binary file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads a segment of a binary file into the module, leaving the rest of its contents as they are. The
+     * segment is read with a single channel read and written to the module in one go.
+     * @param binFile File to read
+     * @param nram Module to write to
+     * @param offset Position in the file to start reading from
+     * @param length Number of bytes to read, or -1 for the rest of the file. Anything past the end of memory is
+     *               ignored.
+     * @param address Address to load the first byte to
+     * @return Number of bytes loaded
+     * @throws IOException If the file can't be read, or is shorter than the requested segment
+     */
+    public static int read(File binFile, NRAM nram, long offset, int length, int address) throws IOException {
+        if (offset < 0 || address < 0 || address > NRAM.MAX_ADDR) {
+            throw new IllegalArgumentException("Invalid segment: offset " + offset + ", address " + address);
+        }
+
+        try (FileChannel ch = FileChannel.open(binFile.toPath(), StandardOpenOption.READ)) {
+            long available = Math.max(0, ch.size() - offset);
+            if (length < 0) {
+                length = (int) Math.min(available, Integer.MAX_VALUE);
+            }
+            else if (length > available) {
+                throw new IOException("File is too short for a " + length + " byte segment at offset " + offset);
+            }
+
+            int count = Math.min(length, NRAM.MAX_ADDR + 1 - address);
+            ByteBuffer buf = ByteBuffer.allocate(count);
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, offset + buf.position()) < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+            }
+
+            nram.setBytes(address, buf.array(), 0, count);
+            return count;
+        }
+    }
+
+}
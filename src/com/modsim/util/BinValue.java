@@ -0,0 +1,203 @@
+package com.modsim.util;
+
+/**
+ * Immutable counterpart to BinData. There are only 256 combinations of value and connection mask, so every
+ * instance is taken from a shared table: retrieving or computing a value never allocates, and two values are
+ * identical exactly when they're the same object.
+ * Unlike BinData.equals, identity also distinguishes value bits hidden under NOCON, which getUInt can see.
+ */
+public final class BinValue {
+
+    private static final BinValue[] TABLE = new BinValue[256];
+
+    static {
+        for (int i = 0; i < TABLE.length; i++) {
+            TABLE[i] = new BinValue(i & 0xF, i >> 4);
+        }
+    }
+
+    /**
+     * All bits NOCON
+     */
+    public static final BinValue NOCON = of(0, 0);
+
+    /**
+     * All bits LOW
+     */
+    public static final BinValue ZERO = ofUInt(0);
+
+    private final byte val;
+    private final byte mask;
+
+    private BinValue(int val, int mask) {
+        this.val = (byte) val;
+        this.mask = (byte) mask;
+    }
+
+    /**
+     * Retrieves a value
+     * @param val Value bits
+     * @param mask Connection mask (set bits are connected)
+     */
+    public static BinValue of(int val, int mask) {
+        return TABLE[((mask & 0xF) << 4) | (val & 0xF)];
+    }
+
+    /**
+     * Retrieves the value matching some binary data
+     */
+    public static BinValue of(BinData d) {
+        return of(d.val, d.mask);
+    }
+
+    /**
+     * Retrieves a value from its packed form, (mask << 4) | value
+     */
+    public static BinValue fromPacked(int packed) {
+        return TABLE[packed & 0xFF];
+    }
+
+    /**
+     * Retrieves an unsigned binary number (ignores integer's sign), all bits connected
+     */
+    public static BinValue ofUInt(int n) {
+        return TABLE[0xF0 | (n & 0xF)];
+    }
+
+    /**
+     * Retrieves a value with all bits set to a boolean
+     */
+    public static BinValue ofBool(boolean b) {
+        return b ? TABLE[0xFF] : TABLE[0xF0];
+    }
+
+    /**
+     * Gets as an unsigned integer
+     * Ignores mask (!)
+     */
+    public int getUInt() {
+        return val;
+    }
+
+    /**
+     * Gets the connection mask (set bits are connected)
+     */
+    public int getMask() {
+        return mask;
+    }
+
+    /**
+     * Gets the packed form, (mask << 4) | value
+     */
+    public int getPacked() {
+        return (mask << 4) | val;
+    }
+
+    /**
+     * Retrieve a binary bit
+     * @param bit Bit index
+     * @return Bit value (0, 1, or NOCON)
+     */
+    public byte getBit(int bit) {
+        if (((mask >> bit) & 1) == 0) return BinData.NOCON;
+        return (byte) ((val >> bit) & 1);
+    }
+
+    public boolean getBooleanBit(int bit) {
+        return ((val & mask) >> bit & 1) == 1;
+    }
+
+    /**
+     * Gets the value with a bit changed
+     * @param bit Bit index
+     * @param v New bit value (0, 1, or NOCON)
+     */
+    public BinValue withBit(int bit, int v) {
+        int b = 1 << bit;
+
+        if (v == BinData.NOCON) {
+            return of(val, mask & ~b);
+        }
+        else {
+            return of((val & ~b) | ((v & 1) << bit), mask | b);
+        }
+    }
+
+    /**
+     * Bitwise AND of the value bits (as getUInt), all bits connected
+     */
+    public BinValue and(BinValue o) {
+        return ofUInt(val & o.val);
+    }
+
+    /**
+     * Bitwise OR of the value bits (as getUInt), all bits connected
+     */
+    public BinValue or(BinValue o) {
+        return ofUInt(val | o.val);
+    }
+
+    /**
+     * Bitwise XOR of the value bits (as getUInt), all bits connected
+     */
+    public BinValue xor(BinValue o) {
+        return ofUInt(val ^ o.val);
+    }
+
+    /**
+     * Bitwise NOT of the value bits (as getUInt), all bits connected
+     */
+    public BinValue not() {
+        return ofUInt(~val);
+    }
+
+    /**
+     * 4-bit sum of the value bits (as getUInt), all bits connected. The carry is lost.
+     */
+    public BinValue add(BinValue o) {
+        return ofUInt(val + o.val);
+    }
+
+    /**
+     * Shifts the connected bits left, NOCON bits and vacated bits reading LOW. All bits connected.
+     */
+    public BinValue shiftLeft(int dist) {
+        return ofUInt((val & mask) << dist);
+    }
+
+    /**
+     * Shifts the connected bits right, NOCON bits and vacated bits reading LOW. All bits connected.
+     */
+    public BinValue shiftRight(int dist) {
+        return ofUInt((val & mask) >> dist);
+    }
+
+    /**
+     * Pull resolution
+     * @return The value with NOCON bits set to match the corresponding bits in pull
+     */
+    public BinValue resolvePull(BinValue pull) {
+        return ofUInt((val & mask) | (~mask & pull.val));
+    }
+
+    /**
+     * Creates mutable binary data with the same value
+     */
+    public BinData toBinData() {
+        return new BinData(val, mask);
+    }
+
+    /**
+     * Formats to string
+     */
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder(4);
+        for (int i = 3; i >= 0; i--) {
+            int b = getBit(i);
+            s.append(b == BinData.NOCON ? 'x' : (char) ('0' + b));
+        }
+        return s.toString();
+    }
+
+}
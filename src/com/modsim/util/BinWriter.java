@@ -0,0 +1,57 @@
+package com.modsim.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.swing.JOptionPane;
+
+import com.modsim.modules.NRAM;
+
+/**
+ * Saves NRAM contents as raw binary images, one byte per address
+ */
+public class BinWriter {
+
+    /**
+     * Writes the module's full contents to a binary file
+     */
+    public static void writeFile(File binFile, NRAM nram) {
+        if (nram == null) {
+            JOptionPane.showMessageDialog(null, "No NRAM module present");
+            return;
+        }
+
+        try {
+            write(binFile, nram, 0, NRAM.MAX_ADDR + 1);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(null, "Binary file IO failure: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a range of the module's contents to a binary file, replacing the file
+     * @param binFile File to write
+     * @param nram Module to read from
+     * @param address First address to write
+     * @param length Number of bytes to write
+     * @throws IOException If the file can't be written
+     */
+    public static void write(File binFile, NRAM nram, int address, int length) throws IOException {
+        byte[] data = new byte[length];
+        nram.getBytes(address, data, 0, length);
+
+        try (FileChannel ch = FileChannel.open(binFile.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+        }
+    }
+
+}
@@ -3,6 +3,11 @@ package com.modsim.util;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.logging.Logger;
 
 import javax.swing.JOptionPane;
 
@@ -11,6 +16,9 @@ import com.modsim.Main;
 
 public class HexReader {
 
+    // Longest entry accepted, e.g. "65536x00"
+    private static final int MAX_ENTRY = 16;
+
     /**
      * Reads a hex format file
      */
@@ -20,19 +28,12 @@ public class HexReader {
             return;
         }
 
-        try {
+        try (Reader in = new BufferedReader(new FileReader(hexFile))) {
             nram.clear();
-            BufferedReader in = new BufferedReader(new FileReader(hexFile));
-
-            // Read in the full file
-            String line;
-            String file = "";
-            while ((line = in.readLine()) != null) {
-                file += line + " ";
-            }
-            in.close();
+            read(in, nram);
 
-            readString(file, nram);
+            // Propagate change
+            Main.sim.propagate(nram);
         }
         catch (Exception e) {
             e.printStackTrace();
@@ -42,43 +43,116 @@ public class HexReader {
 
     public static void readString(String store, NRAM nram) {
         try {
-            String[] chopped = store.split("( |\t)+");
-
-            int adr = 0;
-            for (String s : chopped) {
-                // Skip isEmpty strings
-                if (s.equals("")) continue;
-
-                // Multiple entries
-                int rpt = 1;
-                if (s.contains("x")) {
-                    String[] pair = s.split("x");
-                    rpt = Integer.parseInt(pair[0]);
-                    s = pair[1];
-                }
+            read(new StringReader(store), nram);
 
-                // Flag invalid formatting
-                if (s.length() != 2) {
-                    throw new Exception("File load requires hex codes 2 digits long");
+            // Propagate change
+            Main.sim.propagate(nram);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(null, "Invalid hex string: "+e.getMessage());
+        }
+    }
+
+    /**
+     * Streams hex data into an NRAM module from address 0. Entries are two hex digits, optionally prefixed with
+     * a repeat count ("NNx"), separated by whitespace. The data is written in one go once the stream ends (or an
+     * invalid entry is found), so the module's editor is only updated once.
+     * @param in Stream to read from
+     * @param nram Module to write to
+     * @return Number of bytes written
+     * @throws IOException If the stream can't be read or contains an invalid entry
+     */
+    public static int read(Reader in, NRAM nram) throws IOException {
+        byte[] data = new byte[NRAM.MAX_ADDR + 1];
+        char[] buf = new char[8192];
+        char[] entry = new char[MAX_ENTRY];
+        int len = 0;
+        int adr = 0;
+
+        try {
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    char c = buf[i];
+
+                    if (Character.isWhitespace(c)) {
+                        if (len != 0) {
+                            adr = parseEntry(entry, len, data, adr);
+                            len = 0;
+                        }
+                    }
+                    else if (len < MAX_ENTRY) {
+                        entry[len++] = c;
+                    }
+                    else {
+                        throw new IOException("Invalid entry " + new String(entry, 0, len) + "...");
+                    }
                 }
+            }
 
-                int n1 = Integer.parseInt(s.substring(0, 1), 16);
-                int n2 = Integer.parseInt(s.substring(1), 16);
+            if (len != 0) {
+                adr = parseEntry(entry, len, data, adr);
+            }
+        }
+        finally {
+            // Keep whatever was read before any failure, as when the data was written entry by entry
+            int count = Math.min(adr, data.length);
+            nram.setBytes(0, data, 0, count);
+        }
+
+        if (adr > data.length) {
+            Logger.getLogger(HexReader.class.getName()).warning("Hex data runs past the end of NRAM, and was truncated.");
+        }
+
+        return Math.min(adr, data.length);
+    }
+
+    /**
+     * Decodes a single entry into the data array
+     * @return The address following the entry
+     */
+    private static int parseEntry(char[] entry, int len, byte[] data, int adr) throws IOException {
+        // Multiple entries
+        int rpt = 1;
+        int start = 0;
+        for (int i = 0; i < len; i++) {
+            if (entry[i] == 'x') {
+                if (i == 0) {
+                    throw new IOException("Missing repeat count in " + new String(entry, 0, len));
+                }
 
-                // Support repeated entries
-                for (int i = 0; i < rpt; i++) {
-                    nram.write(adr, new BinData(n2), new BinData(n1));
-                    adr++;
+                rpt = 0;
+                for (int j = 0; j < i; j++) {
+                    int d = Character.digit(entry[j], 10);
+                    if (d < 0 || rpt > NRAM.MAX_ADDR + 1) {
+                        throw new IOException("Invalid repeat count in " + new String(entry, 0, len));
+                    }
+                    rpt = rpt * 10 + d;
                 }
+                start = i + 1;
+                break;
             }
+        }
 
-            // Propagate change
-            Main.sim.propagate(nram);
+        // Flag invalid formatting
+        if (len - start != 2) {
+            throw new IOException("File load requires hex codes 2 digits long");
         }
-        catch (Exception e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Invalid hex string: "+e.getMessage());
+
+        int n1 = Character.digit(entry[start], 16);
+        int n2 = Character.digit(entry[start + 1], 16);
+        if (n1 < 0 || n2 < 0) {
+            throw new IOException("Invalid hex code " + new String(entry, 0, len));
         }
+
+        // Support repeated entries
+        int end = Math.min(adr + rpt, data.length + 1);
+        if (adr < data.length) {
+            Arrays.fill(data, adr, Math.min(end, data.length), (byte) ((n1 << 4) | n2));
+        }
+
+        return end;
     }
 
 }
@@ -1,6 +1,8 @@
 package com.modsim.util;
 
 import java.io.*;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import javax.swing.JOptionPane;
 
@@ -28,8 +30,39 @@ public class HexWriter {
         }
     }
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // Entries per line when splitting lines
+    private static final int LINE_ENTRIES = 8;
+
+    // Encodings of each module's pages from previous calls, reused while the pages are unchanged
+    private static final Map<NRAM, PageEncoding[]> pageCache = new WeakHashMap<>();
+
+    /**
+     * A page of memory encoded as runs of repeated bytes. The first and last runs are kept apart, as they may
+     * join up with runs on the neighbouring pages.
+     */
+    private static class PageEncoding {
+        final int generation;
+        final int firstVal, firstLen;
+        final int lastVal, lastLen; // lastLen is 0 if the whole page is one run
+        final String middle;
+
+        PageEncoding(int generation, int firstVal, int firstLen, int lastVal, int lastLen, String middle) {
+            this.generation = generation;
+            this.firstVal = firstVal;
+            this.firstLen = firstLen;
+            this.lastVal = lastVal;
+            this.lastLen = lastLen;
+            this.middle = middle;
+        }
+    }
+
     /**
-     * Writes a hex format string containing the raw data from the specified NRAM module
+     * Writes a hex format string containing the raw data from the specified NRAM module. Runs of repeated bytes
+     * are written as NNxHH, and trailing zeroes are left out.
+     * Without line splitting (as used for saving designs), pages that haven't changed since the module was last
+     * encoded reuse their previous encodings.
      * @param nram NRAM module to read from
      * @return String of hex data
      */
@@ -38,59 +71,154 @@ public class HexWriter {
             return "";
         }
 
-        try {
-            StringWriter out = new StringWriter();
-
-            int adr, entries = 0;
-            for (adr = 0; adr <= NRAM.MAX_ADDR; adr++) {
-                int val, newVal;
-                int num = 0;
-                int seekAdr = adr;
-
-                BinData[] bits = nram.read(adr);
-                newVal = bits[0].getUInt() | (bits[1].getUInt() << 4);
-
-                // Seek out repeated bytes
-                do {
-                    seekAdr++;
-                    val = newVal;
-
-                    if (seekAdr <= NRAM.MAX_ADDR) {
-                        bits = nram.read(seekAdr);
-                        newVal = bits[0].getUInt() | (bits[1].getUInt() << 4);
-                    }
-                    else newVal = 0;
-
-                    num++;
-                } while (newVal == val && seekAdr < NRAM.MAX_ADDR);
-                adr = seekAdr - 1;
-
-                if (seekAdr == NRAM.MAX_ADDR && val == 0) {
-                    continue; // No point writing trailing zeroes
-                }
+        if (!splitLines) {
+            return hexStringByPages(nram);
+        }
+
+        byte[] data = new byte[NRAM.MAX_ADDR + 1];
+        nram.getBytes(0, data, 0, data.length);
 
-                // Combination of multiple bytes into one entry
-                if (num > 1) {
-                    out.write("" + num + "x");
+        // No point writing trailing zeroes
+        int end = data.length;
+        while (end > 0 && data[end - 1] == 0) {
+            end--;
+        }
+
+        // Each entry takes at most 3 characters per byte it covers, plus the line breaks
+        StringBuilder out = new StringBuilder(end * 3 + (splitLines ? end / LINE_ENTRIES : 0) + 1);
+
+        int entries = 0;
+        int adr = 0;
+        while (adr < end) {
+            // Seek out repeated bytes
+            int val = data[adr];
+            int run = adr + 1;
+            while (run < end && data[run] == val) {
+                run++;
+            }
+
+            appendRun(out, val & 0xFF, run - adr);
+            entries++;
+
+            if (splitLines && entries % LINE_ENTRIES == 0) {
+                out.append('\n');
+            }
+
+            adr = run;
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * Encodes the module page by page, joining up runs which cross page boundaries so that the result is the
+     * same as encoding it in one go
+     */
+    private static String hexStringByPages(NRAM nram) {
+        PageEncoding[] cache;
+        synchronized (pageCache) {
+            cache = pageCache.get(nram);
+            if (cache == null) {
+                cache = new PageEncoding[(NRAM.MAX_ADDR + 1) / NRAM.PAGE_SIZE];
+                pageCache.put(nram, cache);
+            }
+        }
+
+        synchronized (cache) {
+            byte[] data = new byte[NRAM.PAGE_SIZE];
+            int size = 0;
+
+            for (int p = 0; p < cache.length; p++) {
+                // Taking the generation before the data means a page changed in between is re-encoded next time
+                int gen = nram.getPageGeneration(p);
+                PageEncoding e = cache[p];
+                if (e == null || e.generation != gen) {
+                    nram.getBytes(p * NRAM.PAGE_SIZE, data, 0, data.length);
+                    e = encodePage(data, gen);
+                    cache[p] = e;
                 }
+                size += e.middle.length() + 2 * 8;
+            }
 
-                // The byte value in hex format
-                out.write(String.format("%02x\t", val));
-                entries++;
+            StringBuilder out = new StringBuilder(size);
+            int runVal = -1, runLen = 0;
 
-                if (splitLines && entries % 8 == 0) {
-                    out.write("\n");
+            for (PageEncoding e : cache) {
+                if (e.firstVal == runVal) {
+                    runLen += e.firstLen;
+                }
+                else {
+                    appendRun(out, runVal, runLen);
+                    runVal = e.firstVal;
+                    runLen = e.firstLen;
+                }
+
+                if (e.lastLen != 0) {
+                    appendRun(out, runVal, runLen);
+                    out.append(e.middle);
+                    runVal = e.lastVal;
+                    runLen = e.lastLen;
                 }
             }
 
-            out.close();
-            return out.getBuffer().toString();
+            // No point writing trailing zeroes
+            if (runVal != 0) {
+                appendRun(out, runVal, runLen);
+            }
+
+            return out.toString();
         }
-        catch (Exception e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Unable to write hex file: " + e.getMessage());
-            return "";
+    }
+
+    /**
+     * Splits a page into its first run, last run and the entries in between
+     */
+    private static PageEncoding encodePage(byte[] data, int generation) {
+        int firstVal = data[0] & 0xFF;
+        int firstEnd = 1;
+        while (firstEnd < data.length && (data[firstEnd] & 0xFF) == firstVal) {
+            firstEnd++;
+        }
+
+        if (firstEnd == data.length) {
+            return new PageEncoding(generation, firstVal, firstEnd, 0, 0, "");
         }
+
+        int lastVal = data[data.length - 1] & 0xFF;
+        int lastStart = data.length - 1;
+        while ((data[lastStart - 1] & 0xFF) == lastVal) {
+            lastStart--;
+        }
+
+        StringBuilder middle = new StringBuilder((lastStart - firstEnd) * 3);
+        int adr = firstEnd;
+        while (adr < lastStart) {
+            int val = data[adr] & 0xFF;
+            int run = adr + 1;
+            while (run < lastStart && (data[run] & 0xFF) == val) {
+                run++;
+            }
+
+            appendRun(middle, val, run - adr);
+            adr = run;
+        }
+
+        return new PageEncoding(generation, firstVal, firstEnd, lastVal, data.length - lastStart, middle.toString());
+    }
+
+    /**
+     * Appends an entry for a run of repeated bytes, if it's not empty
+     */
+    private static void appendRun(StringBuilder out, int val, int num) {
+        if (num == 0) return;
+
+        // Combination of multiple bytes into one entry
+        if (num > 1) {
+            out.append(num).append('x');
+        }
+
+        // The byte value in hex format
+        out.append(HEX_DIGITS[(val >> 4) & 0xF]).append(HEX_DIGITS[val & 0xF]).append('\t');
     }
 
 }
@@ -8,8 +8,9 @@ import com.modsim.simulator.PickableEntity;
 import com.modsim.operations.CreateOperation;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by Ali on 05/09/2015.
@@ -86,12 +87,13 @@ public class ModuleClipboard {
         List<PickableEntity> output = new ArrayList<>(modules);
 
         // Add to the simulation
+        List<Link> rejected = Main.sim.addAll(modules, links);
+
         for (BaseModule m : modules) {
-            Main.sim.addEntity(m);
             Main.opStack.pushOp(new CreateOperation(m));
         }
         for (Link l : links) {
-            Main.sim.addLink(l);
+            if (rejected.contains(l)) continue;
             Main.opStack.pushOp(new CreateOperation(l));
 
             // Need to return control points as well
@@ -111,7 +113,10 @@ public class ModuleClipboard {
         assert destModules != null && destModules.isEmpty();
         assert destLinks != null && destLinks.isEmpty();
 
+        // Positions of the source modules, to find the copies of link targets
+        Map<BaseModule, Integer> srcIndex = new IdentityHashMap<>();
         for (BaseModule m : src) {
+            srcIndex.put(m, destModules.size());
             destModules.add((BaseModule) m.createNew());
         }
 
@@ -124,9 +129,7 @@ public class ModuleClipboard {
             m.orientation = oldM.orientation;
 
             // Data copy
-            HashMap<String, String> moduleData = oldM.dataOut();
-            if (moduleData != null) {
-                m.dataIn(moduleData);
+            if (m.copyData(oldM)) {
                 m.propagate();
             }
 
@@ -136,23 +139,22 @@ public class ModuleClipboard {
                 Port oldPort = oldM.ports.get(j);
 
                 // Check it's a link between two copied entities
-                if (oldPort.link != null
+                Integer targetModuleInd = oldPort.link != null ? srcIndex.get(oldPort.link.targ.owner) : null;
+                if (targetModuleInd != null
                         && oldPort == oldPort.link.src
-                        && src.contains(oldPort.link.src.owner)
-                        && src.contains(oldPort.link.targ.owner)) {
+                        && srcIndex.containsKey(oldPort.link.src.owner)) {
 
-                    int targetModuleInd = src.indexOf(oldPort.link.targ.owner);
-                    int targetPortInd = oldPort.link.targ.owner.ports.indexOf(oldPort.link.targ);
-                    Port targetPort = destModules.get(targetModuleInd).ports.get(targetPortInd);
+                    // Ports are at the same position in the copy as in the original
+                    Port targetPort = destModules.get(targetModuleInd).ports.get(oldPort.link.targ.index);
 
                     newPort.link = null;
                     targetPort.link = null;
-                    Link newLink = Link.createLink(newPort, targetPort, new BezierPath(oldPort.link.path));
+                    // Checked for loops and propagated when the copies are added to the simulation
+                    Link newLink = Link.createBulk(newPort, targetPort, new BezierPath(oldPort.link.path));
 
                     // Store the new link
                     if (newLink != null) {
                         assert newLink.path != oldPort.link.path;
-                        Main.sim.propagate(newLink.targ.owner);
                         newPort.link = newLink;
                         destLinks.add(newLink);
                     }
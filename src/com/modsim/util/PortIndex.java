@@ -0,0 +1,131 @@
+package com.modsim.util;
+
+import java.util.Arrays;
+
+import com.modsim.modules.parts.Port;
+
+/**
+ * Looks up ports by ID in constant time, for resolving links as a design is loaded or imported.
+ * Saved designs number their ports sequentially (see XMLWriter.genIDs), so IDs are normally held in a dense array
+ * indexed by ID. Any that are negative or far beyond the rest go in an int-keyed hash table instead, so odd files
+ * can't blow up the array.
+ */
+public class PortIndex {
+
+    // IDs below this are always stored densely; above, only while the array stays at least half full
+    private static final int MIN_DENSE = 1024;
+
+    private Port[] dense = new Port[64];
+    private int denseCount = 0;
+
+    // Open-addressed hash table for the remaining IDs, sized as a power of two
+    private int[] keys = null;
+    private Port[] values = null;
+    private int hashCount = 0;
+
+    /**
+     * Adds a port under its current ID, replacing any port already added with the same ID
+     * @param p Port to add
+     */
+    public void put(Port p) {
+        put(p.ID, p);
+    }
+
+    /**
+     * Adds a port under the given ID, replacing any port already added with it
+     * @param id ID to add the port under
+     * @param p Port to add
+     */
+    public void put(int id, Port p) {
+        // Each ID lives in one place or the other - once hashed, it stays hashed
+        boolean fitsDense = id >= 0 && (id < dense.length || id < Math.max(MIN_DENSE, denseCount * 2));
+        if (fitsDense && (hashCount == 0 || hashGet(id) == null)) {
+            if (id >= dense.length) {
+                dense = Arrays.copyOf(dense, Math.max(dense.length * 2, id + 1));
+            }
+            if (dense[id] == null) denseCount++;
+            dense[id] = p;
+        }
+        else {
+            hashPut(id, p);
+        }
+    }
+
+    /**
+     * Finds a port by ID
+     * @param id ID to look up
+     * @return The port added with that ID, or null if there isn't one
+     */
+    public Port get(int id) {
+        if (id >= 0 && id < dense.length && dense[id] != null) {
+            return dense[id];
+        }
+        return hashGet(id);
+    }
+
+    /**
+     * @return The number of distinct IDs added
+     */
+    public int size() {
+        return denseCount + hashCount;
+    }
+
+    private Port hashGet(int id) {
+        if (keys == null) return null;
+
+        int mask = keys.length - 1;
+        for (int i = hash(id) & mask; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == id) return values[i];
+        }
+        return null;
+    }
+
+    private void hashPut(int id, Port p) {
+        if (keys == null) {
+            keys = new int[16];
+            values = new Port[16];
+        }
+        else if ((hashCount + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+
+        int mask = keys.length - 1;
+        int i = hash(id) & mask;
+        while (values[i] != null) {
+            if (keys[i] == id) {
+                values[i] = p;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = id;
+        values[i] = p;
+        hashCount++;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Port[] oldValues = values;
+        keys = new int[capacity];
+        values = new Port[capacity];
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] == null) continue;
+
+            int i = hash(oldKeys[j]) & mask;
+            while (values[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+}
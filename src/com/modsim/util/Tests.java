@@ -2,6 +2,7 @@ package com.modsim.util;
 
 import java.awt.geom.AffineTransform;
 
+import com.modsim.Main;
 import com.modsim.modules.BaseModule;
 import com.modsim.modules.parts.*;
 import com.modsim.modules.ports.Input;
@@ -16,6 +17,20 @@ public class Tests {
      * @param args
      */
     public static void main(String[] args) {
+        // The module palette is built before the simulation is (see Main), so the modules mustn't need one
+        System.out.print("Testing the module palette without a simulation - ");
+        testval(Main.sim == null, true);
+        try {
+            testnull(BaseModule.AvailableModules.values());
+        }
+        catch (ExceptionInInitializerError e) {
+            System.err.println("FAILED TO LOAD");
+            e.getCause().printStackTrace();
+            System.err.println("Tests failed");
+            return;
+        }
+        System.out.println();
+
         // Instantiation and unit testing
         System.out.println("Testing instantiation of com.modsim.modules:");
 
@@ -0,0 +1,97 @@
+package com.modsim.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.swing.JOptionPane;
+
+import com.modsim.modules.AccessCounter;
+import com.modsim.modules.NRAM;
+
+/**
+ * Saves NRAM access counts, as CSV or as a binary table
+ */
+public class TraceWriter {
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Writes the counts to a file, reporting any failure to the user
+     * @param csv Whether to write CSV rather than the binary table
+     */
+    public static void writeFile(File file, AccessCounter counts, boolean csv) {
+        if (counts == null) {
+            JOptionPane.showMessageDialog(null, "No access counts recorded");
+            return;
+        }
+
+        try {
+            if (csv) {
+                writeCSV(file, counts);
+            }
+            else {
+                writeBinary(file, counts);
+            }
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(null, "Trace file IO failure: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the counts as CSV: a header, then "address,reads,writes" for each address accessed, with the address
+     * in hex
+     * @throws IOException If the file can't be written
+     */
+    public static void writeCSV(File file, AccessCounter counts) throws IOException {
+        try (Writer out = new BufferedWriter(new FileWriter(file))) {
+            out.write("address,reads,writes\n");
+
+            char[] adr = new char[4];
+            for (int i = 0; i <= NRAM.MAX_ADDR; i++) {
+                long r = counts.getReads(i);
+                long w = counts.getWrites(i);
+                if (r == 0 && w == 0) continue;
+
+                for (int d = 0; d < 4; d++) {
+                    adr[d] = HEX_DIGITS[(i >> (12 - d * 4)) & 0xF];
+                }
+                out.write(adr);
+                out.write(',');
+                out.write(Long.toString(r));
+                out.write(',');
+                out.write(Long.toString(w));
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Writes the counts as a binary table: for every address in order, its reads then its writes, each a
+     * big-endian 64-bit integer
+     * @throws IOException If the file can't be written
+     */
+    public static void writeBinary(File file, AccessCounter counts) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate((NRAM.MAX_ADDR + 1) * 2 * Long.BYTES);
+        for (int i = 0; i <= NRAM.MAX_ADDR; i++) {
+            buf.putLong(counts.getReads(i));
+            buf.putLong(counts.getWrites(i));
+        }
+        buf.flip();
+
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+        }
+    }
+
+}
@@ -2,14 +2,19 @@ package com.modsim.util;
 
 import com.modsim.gui.view.View;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
 import javax.swing.JOptionPane;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import com.modsim.modules.BaseModule;
 import com.modsim.modules.BaseModule.AvailableModules;
@@ -17,10 +22,13 @@ import com.modsim.modules.Link;
 import com.modsim.modules.ports.BidirPort;
 import com.modsim.modules.parts.Port;
 
-import org.w3c.dom.*;
-
 import com.modsim.Main;
 
+/**
+ * Loads designs from .modsim files. The file is streamed, with each module and link built as soon as its element
+ * ends, so memory use doesn't grow with the file beyond the design itself. The design is then added to the
+ * simulation in bulk.
+ */
 public class XMLReader {
 
     /**
@@ -32,187 +40,303 @@ public class XMLReader {
         Main.sim.beginDeferPropagations();
 
         try {
-            DocumentBuilderFactory dbF = DocumentBuilderFactory.newInstance();
-            DocumentBuilder db = dbF.newDocumentBuilder();
-            Document doc = db.parse(xmlFile);
+            // Read the document elements into the program
+            int badLinks = readDesign(xmlFile, Main.ui.view);
 
-            doc.getDocumentElement().normalize();
+            // Notify user of partially corrupted file
+            if (badLinks != 0) {
+                JOptionPane.showMessageDialog(null, "Detected " + badLinks + " bad links in the file. These were ignored.\n"+
+                                                    "A known bug in an older version of ModuleSim may have corrupted your file - "+
+                                                    "there may be other incorrect or missing links.");
+            }
 
-            // Read the document elements into the program
-            Main.sim.newSim();
-
-            // View load
-            Element view = (Element) doc.getElementsByTagName("view").item(0);
-            View v = Main.ui.view;
-            v.init_camX = v.camX = Double.parseDouble(view.getAttribute("camX"));
-            v.init_camY = v.camY = Double.parseDouble(view.getAttribute("camY"));
-            v.init_zoomI = v.zoomI = Integer.parseInt(view.getAttribute("zoom"));
-            v.zoom = View.ZOOM_MULTIPLIER * v.zoomI;
-            v.calcXForm();
+            // Save the file path
+            Main.sim.filePath = xmlFile.getPath();
+            Main.ui.updateTitle();
 
-            // Module load
-            NodeList mods = doc.getElementsByTagName("module");
-            List<Port> loadedPorts = new ArrayList<>();
+        } catch (Exception e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(null, "Error while loading file "+xmlFile.getName()+": " + e.getMessage());
+        }
 
-            for (int i = 0; i < mods.getLength(); i++) {
-                Node n = mods.item(i);
+        Main.sim.endDeferPropagations();
+        Main.ui.view.flagStaticRedraw();
+    }
 
-                if (n.getNodeType() == Node.ELEMENT_NODE) {
-                    Element module = (Element) n;
+    /**
+     * Reads an XML-format file without touching the GUI (for headless runs). The view settings are ignored.
+     *
+     * @param xmlFile File to read
+     * @return The number of bad links which were skipped
+     * @throws Exception If the file couldn't be read
+     */
+    public static int loadFile(File xmlFile) throws Exception {
+        Main.sim.beginDeferPropagations();
 
-                    int id = Integer.parseInt(module.getAttribute("ID"));
-                    String modType = module.getAttribute("type");
+        try {
+            int badLinks = readDesign(xmlFile, null);
+            Main.sim.filePath = xmlFile.getPath();
+            return badLinks;
+        }
+        finally {
+            Main.sim.endDeferPropagations();
+        }
+    }
 
-                    AvailableModules am;
-                    try {
-                        am = AvailableModules.valueOf(modType);
-                    } catch (IllegalArgumentException iae) {
-                        System.err.println("Warning: Skipping unrecognized module '"+modType+"'");
-                        continue;
-                    }
+    /**
+     * Streams the modules and links from a file into the simulation. The current design is only replaced once the
+     * whole file has been read, so a malformed file leaves it untouched.
+     * @param v View to apply the file's view settings to, or null to ignore them
+     * @return The number of bad links which were skipped
+     */
+    private static int readDesign(File xmlFile, View v) throws Exception {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(xmlFile))) {
+            XMLStreamReader r = factory.createXMLStreamReader(in);
+            try {
+                return readDesign(r, v);
+            }
+            finally {
+                r.close();
+            }
+        }
+    }
 
-                    BaseModule m = (BaseModule) am.getSrcModule().createNew();
-                    m.ID = id;
+    /**
+     * Loads the modules and links from the document, then replaces the simulation's design with them
+     * @return The number of bad links which were skipped
+     */
+    private static int readDesign(XMLStreamReader r, View v) throws XMLStreamException {
+        List<BaseModule> modules = new ArrayList<>();
+        List<LinkSpec> linkSpecs = new ArrayList<>();
+        PortIndex loadedPorts = new PortIndex();
+        ViewSpec viewSpec = null;
+
+        while (r.hasNext()) {
+            if (r.next() != XMLStreamConstants.START_ELEMENT) continue;
+
+            switch (r.getLocalName()) {
+                case "view":
+                    viewSpec = readView(r);
+                    break;
+                case "module":
+                    BaseModule m = readModule(r, loadedPorts);
+                    if (m != null) modules.add(m);
+                    break;
+                case "link":
+                    LinkSpec spec = readLink(r);
+                    if (spec != null) linkSpecs.add(spec);
+                    break;
+            }
+        }
 
-                    // Set the dimensions
-                    Element dim = (Element) module.getElementsByTagName("dim").item(0);
-                    m.pos.x = Double.parseDouble(dim.getAttribute("x"));
-                    m.pos.y = Double.parseDouble(dim.getAttribute("y"));
-                    m.orientation = Integer.parseInt(dim.getAttribute("orient"));
-
-                    // Set the label
-                    Element label = (Element) module.getElementsByTagName("label").item(0);
-                    if (label != null) {
-                        m.label = label.getTextContent();
-                        m.labelSize = Integer.parseInt(label.getAttribute("size"));
-                    }
+        // Links are resolved once every port is known
+        List<Link> links = new ArrayList<>();
+        int badLinks = 0;
 
-                    // HAX: backwards-compatibility is fun for the whole family!
-                    //   Previous versions of the program made no real distinction between normal ports and the
-                    //   split-merge's bidirectional ports - they were stored in the input/output lists based on
-                    //   which side they were supposed to appear on. Now we have to deal with that by picking out
-                    //   the bidirectional ports and appending them to the input and output lists.
-                    ArrayList<Port> moduleInputs = new ArrayList<>();
-                    moduleInputs.addAll(m.inputs);
-                    ArrayList<Port> moduleOutputs = new ArrayList<>();
-                    moduleOutputs.addAll(m.outputs);
-
-                    for (BidirPort p : m.bidirs) {
-                        if (p.side == 1) {
-                            moduleInputs.add(p);
-                        }
-                        else {
-                            moduleOutputs.add(p);
-                        }
-                    }
+        for (LinkSpec spec : linkSpecs) {
+            Port src = loadedPorts.get(spec.srcID);
+            Port targ = loadedPorts.get(spec.targID);
 
-                    // Set input IDs
-                    NodeList inputs = module.getElementsByTagName("input");
-                    for (int j = 0; j < inputs.getLength(); j++) {
-                        Element inID = (Element) inputs.item(j);
-                        moduleInputs.get(j).ID = Integer.parseInt(inID.getAttribute("ID"));
-                        loadedPorts.add(moduleInputs.get(j));
-                    }
+            Link l = Link.createBulk(src, targ, spec.curve);
+            if (l != null) {
+                links.add(l);
+            }
+            else {
+                badLinks++;
+            }
+        }
 
-                    // Set output IDs
-                    NodeList outputs = module.getElementsByTagName("output");
-                    for (int j = 0; j < outputs.getLength(); j++) {
-                        Element outID = (Element) outputs.item(j);
-                        moduleOutputs.get(j).ID = Integer.parseInt(outID.getAttribute("ID"));
-                        loadedPorts.add(moduleOutputs.get(j));
-                    }
+        // The file has been read successfully - replace the current design
+        Main.sim.newSim();
+        if (v != null && viewSpec != null) viewSpec.apply(v);
 
-                    // Additional module data (for NRAM and inputs)
-                    NodeList data = module.getElementsByTagName("data");
-                    HashMap<String, String> dataMap = new HashMap<>();
-                    for (int j = 0; j < data.getLength(); j++) {
-                        NamedNodeMap nodeMap = data.item(j).getAttributes();
-                        for (int k = 0; k < nodeMap.getLength(); k++) {
-                            Node item = nodeMap.item(k);
-                            dataMap.put(item.getNodeName(), item.getNodeValue());
-                        }
-                    }
-                    m.dataIn(dataMap);
-                    m.propagate();
+        // Add to the simulation
+        badLinks += Main.sim.addAll(modules, links).size();
+        return badLinks;
+    }
 
-                    // Add to the simulation
-                    Main.sim.addEntity(m);
-                    m.enabled = true;
-                }
-            }
+    /**
+     * Reads the view settings
+     */
+    private static ViewSpec readView(XMLStreamReader r) {
+        ViewSpec spec = new ViewSpec();
+        spec.camX = Double.parseDouble(r.getAttributeValue(null, "camX"));
+        spec.camY = Double.parseDouble(r.getAttributeValue(null, "camY"));
+        spec.zoomI = Integer.parseInt(r.getAttributeValue(null, "zoom"));
+        return spec;
+    }
 
-            // Link load
-            NodeList links = doc.getElementsByTagName("link");
-            int badLinks = 0;
+    /**
+     * Reads a module element, from its start tag to its end tag
+     * @param loadedPorts (out) Index to add the module's ports to
+     * @return The module, or null if it's of an unknown type
+     */
+    private static BaseModule readModule(XMLStreamReader r, PortIndex loadedPorts) throws XMLStreamException {
+        int id = Integer.parseInt(r.getAttributeValue(null, "ID"));
+        String modType = r.getAttributeValue(null, "type");
 
-            for (int i = 0; i < links.getLength(); i++) {
-                Node n = links.item(i);
+        AvailableModules am;
+        try {
+            am = AvailableModules.valueOf(modType);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            System.err.println("Warning: Skipping unrecognized module '"+modType+"'");
+            skipElement(r);
+            return null;
+        }
 
-                if (n.getNodeType() == Node.ELEMENT_NODE) {
-                    Element link = (Element) n;
+        BaseModule m = (BaseModule) am.getSrcModule().createNew();
+        m.ID = id;
+
+        // HAX: backwards-compatibility is fun for the whole family!
+        //   Previous versions of the program made no real distinction between normal ports and the
+        //   split-merge's bidirectional ports - they were stored in the input/output lists based on
+        //   which side they were supposed to appear on. Now we have to deal with that by picking out
+        //   the bidirectional ports and appending them to the input and output lists.
+        ArrayList<Port> moduleInputs = new ArrayList<>();
+        moduleInputs.addAll(m.inputs);
+        ArrayList<Port> moduleOutputs = new ArrayList<>();
+        moduleOutputs.addAll(m.outputs);
+
+        for (BidirPort p : m.bidirs) {
+            if (p.side == 1) {
+                moduleInputs.add(p);
+            }
+            else {
+                moduleOutputs.add(p);
+            }
+        }
 
-                    int srcID = Integer.parseInt(link.getAttribute("src"));
-                    int targID = Integer.parseInt(link.getAttribute("targ"));
+        int numInputs = 0, numOutputs = 0;
+        boolean hasDim = false, hasLabel = false;
 
-                    if (srcID == targID) {
-                        System.err.println("Warning: Link's source and target are the same ("+srcID+"). Skipping link");
-                        continue;
-                    }
+        // Additional module data (for NRAM and inputs)
+        HashMap<String, String> dataMap = new HashMap<>();
 
-                    Port src = null, targ = null;
+        for (int depth = 1; depth > 0; ) {
+            int event = r.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) continue;
+            depth++;
 
-                    // Find the source and target
-                    for (Port p : loadedPorts) {
-                        if (p.ID == srcID) {
-                            src = p;
-                        }
-                        else if (p.ID == targID) {
-                            targ = p;
-                        }
+            switch (r.getLocalName()) {
+                case "dim":
+                    // Set the dimensions
+                    if (!hasDim) {
+                        m.pos.x = Double.parseDouble(r.getAttributeValue(null, "x"));
+                        m.pos.y = Double.parseDouble(r.getAttributeValue(null, "y"));
+                        m.orientation = Integer.parseInt(r.getAttributeValue(null, "orient"));
+                        hasDim = true;
+                    }
+                    break;
+                case "label":
+                    // Set the label (reading the text consumes the end tag)
+                    if (!hasLabel) {
+                        m.labelSize = Integer.parseInt(r.getAttributeValue(null, "size"));
+                        m.label = r.getElementText();
+                        depth--;
+                        hasLabel = true;
                     }
+                    break;
+                case "input":
+                    // Set input IDs
+                    Port in = moduleInputs.get(numInputs++);
+                    in.ID = Integer.parseInt(r.getAttributeValue(null, "ID"));
+                    loadedPorts.put(in);
+                    break;
+                case "output":
+                    // Set output IDs
+                    Port out = moduleOutputs.get(numOutputs++);
+                    out.ID = Integer.parseInt(r.getAttributeValue(null, "ID"));
+                    loadedPorts.put(out);
+                    break;
+                case "data":
+                    for (int k = 0; k < r.getAttributeCount(); k++) {
+                        dataMap.put(r.getAttributeLocalName(k), r.getAttributeValue(k));
+                    }
+                    break;
+            }
+        }
 
-                    // Generate the bezier path
-                    BezierPath curve = new BezierPath();
+        m.dataIn(dataMap);
+        m.propagate();
+        m.enabled = true;
 
-                    NodeList points = link.getElementsByTagName("ctrlPt");
-                    for (int j = 0; j < points.getLength(); j++) {
-                        Element pt = (Element) points.item(j);
-                        double x = Double.parseDouble(pt.getAttribute("x"));
-                        double y = Double.parseDouble(pt.getAttribute("y"));
-                        curve.addPt(new CtrlPt(x, y));
-                    }
+        return m;
+    }
 
-                    // Create the link
-                    Link l = Link.createLink(src, targ, curve);
+    /**
+     * Reads a link element, from its start tag to its end tag
+     * @return The link's details, or null if it can't be valid
+     */
+    private static LinkSpec readLink(XMLStreamReader r) throws XMLStreamException {
+        LinkSpec spec = new LinkSpec();
+        spec.srcID = Integer.parseInt(r.getAttributeValue(null, "src"));
+        spec.targID = Integer.parseInt(r.getAttributeValue(null, "targ"));
+
+        // Generate the bezier path
+        for (int depth = 1; depth > 0; ) {
+            int event = r.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+            else if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
 
-                    // Add to the simulation
-                    if (l != null) {
-                        Main.sim.addLink(l);
-                        Main.sim.propagate(l.targ.owner);
-                    }
-                    else {
-                        badLinks++;
-                    }
+                if (r.getLocalName().equals("ctrlPt")) {
+                    double x = Double.parseDouble(r.getAttributeValue(null, "x"));
+                    double y = Double.parseDouble(r.getAttributeValue(null, "y"));
+                    spec.curve.addPt(new CtrlPt(x, y));
                 }
             }
+        }
 
-            // Notify user of partially corrupted file
-            if (badLinks != 0) {
-                JOptionPane.showMessageDialog(null, "Detected " + badLinks + " bad links in the file. These were ignored.\n"+
-                                                    "A known bug in an older version of ModuleSim may have corrupted your file - "+
-                                                    "there may be other incorrect or missing links.");
-            }
+        if (spec.srcID == spec.targID) {
+            System.err.println("Warning: Link's source and target are the same ("+spec.srcID+"). Skipping link");
+            return null;
+        }
 
-            // Save the file path
-            Main.sim.filePath = xmlFile.getPath();
-            Main.ui.updateTitle();
+        return spec;
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Error while loading file "+xmlFile.getName()+": " + e.getMessage());
+    /**
+     * Skips the rest of the current element, up to and including its end tag
+     */
+    private static void skipElement(XMLStreamReader r) throws XMLStreamException {
+        for (int depth = 1; depth > 0; ) {
+            int event = r.next();
+            if (event == XMLStreamConstants.START_ELEMENT) depth++;
+            else if (event == XMLStreamConstants.END_ELEMENT) depth--;
         }
+    }
 
-        Main.sim.endDeferPropagations();
-        Main.ui.view.flagStaticRedraw();
+    /**
+     * The view settings as read from the file
+     */
+    private static class ViewSpec {
+        double camX, camY;
+        int zoomI;
+
+        void apply(View v) {
+            v.init_camX = v.camX = camX;
+            v.init_camY = v.camY = camY;
+            v.init_zoomI = v.zoomI = zoomI;
+            v.zoom = View.ZOOM_MULTIPLIER * v.zoomI;
+            v.calcXForm();
+        }
+    }
+
+    /**
+     * A link as read from the file
+     */
+    private static class LinkSpec {
+        int srcID, targID;
+        final BezierPath curve = new BezierPath();
     }
 }
@@ -2,31 +2,34 @@ package com.modsim.util;
 
 import com.modsim.gui.view.View;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import java.util.Map;
+import java.util.TreeMap;
 
 import com.modsim.modules.BaseModule;
 import com.modsim.modules.Link;
 import com.modsim.modules.ports.BidirPort;
 import com.modsim.modules.parts.Port;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-
 import com.modsim.Main;
 
+/**
+ * Saves designs to .modsim files. The design is copied out under the simulation lock, then written to the file
+ * outside it, so saving a large design doesn't hold up the simulation while the file is written.
+ */
 public class XMLWriter {
 
+    private static final String NL = System.lineSeparator();
+
     /**
      * Generates unique IDs for entities in the simulation
      */
@@ -52,145 +55,298 @@ public class XMLWriter {
      */
     public static void writeFile(File xmlFile) {
         try {
-            DocumentBuilderFactory dbF = DocumentBuilderFactory.newInstance();
-            DocumentBuilder db = dbF.newDocumentBuilder();
-
-            Document doc = db.newDocument();
-
-            // Build the document... add elements, attributes to represent the entities
-            Element rootElem = doc.createElement("ModuleSim");
-            doc.appendChild(rootElem);
-
             // Store the view information
-            Element view = doc.createElement("view");
-            View v = Main.ui.view;
-            view.setAttribute("camX", "" + v.camX);
-            view.setAttribute("camY", "" + v.camY);
-            view.setAttribute("zoom", "" + v.zoomI);
-            rootElem.appendChild(view);
+            String camX, camY, zoom;
+            if (Main.ui != null) {
+                View v = Main.ui.view;
+                camX = "" + v.camX;
+                camY = "" + v.camY;
+                zoom = "" + v.zoomI;
+            }
+            else {
+                // Headless: the default view
+                camX = "0.0";
+                camY = "0.0";
+                zoom = "3";
+            }
+
+            List<ModuleData> modules = new ArrayList<>();
+            List<LinkData> links = new ArrayList<>();
 
             synchronized (Main.sim) {
                 // Generate IDs for storage
                 genIDs();
 
-                // Store the modules
-                List<BaseModule> modules = Main.sim.getModules();
-                Element mods = doc.createElement("ModuleSim");
-                rootElem.appendChild(mods);
-
-                for (BaseModule m : modules) {
-                    Element modElem = doc.createElement("module");
-                    modElem.setAttribute("ID", "" + m.getID());
-                    modElem.setAttribute("type", m.getModType().name());
-
-                    // Dimensions
-                    Element dim = doc.createElement("dim");
-                    dim.setAttribute("x", "" + m.pos.x);
-                    dim.setAttribute("y", "" + m.pos.y);
-                    dim.setAttribute("orient", "" + m.orientation);
-                    modElem.appendChild(dim);
-
-                    // Label
-                    if (!m.label.isEmpty()) {
-                        Element label = doc.createElement("label");
-                        label.setAttribute("size", "" + m.labelSize);
-                        label.setTextContent(m.label);
-                        modElem.appendChild(label);
-                    }
-
-                    // HAX: See XMLReader for an explanation of what's going on here
-                    ArrayList<Port> moduleInputs = new ArrayList<>();
-                    moduleInputs.addAll(m.inputs);
-                    ArrayList<Port> moduleOutputs = new ArrayList<>();
-                    moduleOutputs.addAll(m.outputs);
-
-                    for (BidirPort p : m.bidirs) {
-                        if (p.side == 1) {
-                            moduleInputs.add(p);
-                        }
-                        else {
-                            moduleOutputs.add(p);
-                        }
-                    }
-
-                    // Inputs (i.e. ports on the input side)
-                    Element inputs = doc.createElement("inputs");
-
-                    for (Port inputEdgePort : moduleInputs) {
-                        Element e = doc.createElement("input");
-                        e.setAttribute("ID", "" + inputEdgePort.getID());
-                        inputs.appendChild(e);
-                    }
-
-                    modElem.appendChild(inputs);
-
-                    // Outputs (i.e. ports on the output side)
-                    Element outputs = doc.createElement("outputs");
-
-                    for (Port outputEdgePort : moduleOutputs) {
-                        Element e = doc.createElement("output");
-                        e.setAttribute("ID", "" + outputEdgePort.getID());
-                        outputs.appendChild(e);
-                    }
-
-                    modElem.appendChild(outputs);
-
-                    // Data - stored only if the module's dataOut override indicates a modification has been made
-                    Element data = doc.createElement("data");
-                    HashMap<String, String> dataMap = m.dataOut();
-                    if (dataMap != null) {
-                        for (String key : dataMap.keySet()) {
-                            data.setAttribute(key, dataMap.get(key));
-                        }
-                        modElem.appendChild(data);
-                    }
-
-                    mods.appendChild(modElem);
+                for (BaseModule m : Main.sim.getModules()) {
+                    modules.add(new ModuleData(m));
                 }
-
-                // Store the links
-                List<Link> links = Main.sim.getLinks();
-                Element linksElem = doc.createElement("links");
-                rootElem.appendChild(linksElem);
-
-                for (Link l : links) {
-                    Element lElem = doc.createElement("link");
-                    lElem.setAttribute("src", "" + l.src.ID);
-                    lElem.setAttribute("targ", "" + l.targ.ID);
-
-                    // Curve points
-                    for (CtrlPt c : l.path.ctrlPts) {
-                        Element point = doc.createElement("ctrlPt");
-                        point.setAttribute("x", "" + c.pos.x);
-                        point.setAttribute("y", "" + c.pos.y);
-                        lElem.appendChild(point);
-                    }
-
-                    linksElem.appendChild(lElem);
+                for (Link l : Main.sim.getLinks()) {
+                    links.add(new LinkData(l));
                 }
             }
 
-            // Store the latest id
-            /*Element idElem = doc.createElement("lastid");
-            idElem.setAttribute("id", "" + Main.lastID);
-            rootElem.appendChild(idElem);*/
-
             // Saving operation
-            TransformerFactory tf = TransformerFactory.newInstance();
-            Transformer t = tf.newTransformer();
-            t.setOutputProperty(OutputKeys.INDENT, "yes");
-            t.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-            DOMSource src = new DOMSource(doc);
-            StreamResult r = new StreamResult(xmlFile);
-
-            t.transform(src, r);
+            try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(xmlFile),
+                                                                      StandardCharsets.UTF_8))) {
+                write(w, camX, camY, zoom, modules, links);
+            }
             System.out.println("Saved simulation to " + xmlFile.getAbsolutePath());
 
             Main.sim.filePath = xmlFile.getPath();
-            Main.ui.updateTitle();
+            if (Main.ui != null) Main.ui.updateTitle();
 
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Writes the document. Attributes are written in name order, as the DOM serializer used to.
+     */
+    private static void write(Writer w, String camX, String camY, String zoom,
+                              List<ModuleData> modules, List<LinkData> links) throws IOException {
+        w.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
+        w.write(NL);
+        w.write("<ModuleSim>");
+        w.write(NL);
+
+        w.write("  <view");
+        attr(w, "camX", camX);
+        attr(w, "camY", camY);
+        attr(w, "zoom", zoom);
+        w.write("/>");
+        w.write(NL);
+
+        // Store the modules
+        if (modules.isEmpty()) {
+            w.write("  <ModuleSim/>");
+            w.write(NL);
+        }
+        else {
+            w.write("  <ModuleSim>");
+            w.write(NL);
+            for (ModuleData m : modules) {
+                m.write(w);
+            }
+            w.write("  </ModuleSim>");
+            w.write(NL);
+        }
+
+        // Store the links
+        if (links.isEmpty()) {
+            w.write("  <links/>");
+            w.write(NL);
+        }
+        else {
+            w.write("  <links>");
+            w.write(NL);
+            for (LinkData l : links) {
+                l.write(w);
+            }
+            w.write("  </links>");
+            w.write(NL);
+        }
+
+        w.write("</ModuleSim>");
+        w.write(NL);
+    }
+
+    /**
+     * Writes a list of port elements, e.g. the inputs element holding an input element per port
+     */
+    private static void writePorts(Writer w, String listName, String name, int[] ids) throws IOException {
+        if (ids.length == 0) {
+            w.write("      <" + listName + "/>");
+            w.write(NL);
+            return;
+        }
+
+        w.write("      <" + listName + ">");
+        w.write(NL);
+        for (int id : ids) {
+            w.write("        <" + name + " ID=\"" + id + "\"/>");
+            w.write(NL);
+        }
+        w.write("      </" + listName + ">");
+        w.write(NL);
+    }
+
+    private static void attr(Writer w, String name, String value) throws IOException {
+        w.write(' ');
+        w.write(name);
+        w.write("=\"");
+        escape(w, value, true);
+        w.write('"');
+    }
+
+    /**
+     * Writes text with the XML special characters escaped. Line breaks and tabs in attributes are written as
+     * character references so they survive being read back.
+     */
+    private static void escape(Writer w, String s, boolean inAttr) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '&': w.write("&amp;"); break;
+                case '<': w.write("&lt;"); break;
+                case '>': w.write("&gt;"); break;
+                case '"':
+                    if (inAttr) w.write("&quot;");
+                    else w.write(c);
+                    break;
+                case '\n':
+                    if (inAttr) w.write("&#10;");
+                    else w.write(NL);
+                    break;
+                case '\r': w.write("&#13;"); break;
+                case '\t':
+                    if (inAttr) w.write("&#9;");
+                    else w.write(c);
+                    break;
+                default:
+                    w.write(c);
+            }
+        }
+    }
+
+    /**
+     * A module's saved state, copied out of the simulation
+     */
+    private static class ModuleData {
+        final int id;
+        final String type;
+        final double x, y;
+        final int orient;
+        final String label;
+        final int labelSize;
+        final int[] inputs, outputs;
+        final Map<String, String> data;
+
+        ModuleData(BaseModule m) {
+            id = m.getID();
+            type = m.getModType().name();
+            x = m.pos.x;
+            y = m.pos.y;
+            orient = m.orientation;
+            label = m.label;
+            labelSize = m.labelSize;
+
+            // HAX: See XMLReader for an explanation of what's going on here
+            ArrayList<Port> moduleInputs = new ArrayList<>();
+            moduleInputs.addAll(m.inputs);
+            ArrayList<Port> moduleOutputs = new ArrayList<>();
+            moduleOutputs.addAll(m.outputs);
+
+            for (BidirPort p : m.bidirs) {
+                if (p.side == 1) {
+                    moduleInputs.add(p);
+                }
+                else {
+                    moduleOutputs.add(p);
+                }
+            }
+
+            inputs = getIDs(moduleInputs);
+            outputs = getIDs(moduleOutputs);
+
+            // Data - stored only if the module's dataOut override indicates a modification has been made
+            HashMap<String, String> dataMap = m.dataOut();
+            data = dataMap == null ? null : new TreeMap<>(dataMap);
+        }
+
+        void write(Writer w) throws IOException {
+            w.write("    <module");
+            attr(w, "ID", "" + id);
+            attr(w, "type", type);
+            w.write(">");
+            w.write(NL);
+
+            // Dimensions
+            w.write("      <dim");
+            attr(w, "orient", "" + orient);
+            attr(w, "x", "" + x);
+            attr(w, "y", "" + y);
+            w.write("/>");
+            w.write(NL);
+
+            // Label
+            if (!label.isEmpty()) {
+                w.write("      <label");
+                attr(w, "size", "" + labelSize);
+                w.write(">");
+                escape(w, label, false);
+                w.write("</label>");
+                w.write(NL);
+            }
+
+            // Inputs and outputs (i.e. ports on the input and output sides)
+            writePorts(w, "inputs", "input", inputs);
+            writePorts(w, "outputs", "output", outputs);
+
+            if (data != null) {
+                w.write("      <data");
+                for (Map.Entry<String, String> e : data.entrySet()) {
+                    attr(w, e.getKey(), e.getValue());
+                }
+                w.write("/>");
+                w.write(NL);
+            }
+
+            w.write("    </module>");
+            w.write(NL);
+        }
+
+        private static int[] getIDs(List<Port> ports) {
+            int[] ids = new int[ports.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = ports.get(i).getID();
+            }
+            return ids;
+        }
+    }
+
+    /**
+     * A link's saved state, copied out of the simulation
+     */
+    private static class LinkData {
+        final int src, targ;
+        final double[] pts;
+
+        LinkData(Link l) {
+            src = l.src.ID;
+            targ = l.targ.ID;
+
+            // Curve points
+            List<CtrlPt> ctrlPts = l.path.ctrlPts;
+            pts = new double[ctrlPts.size() * 2];
+            for (int i = 0; i < ctrlPts.size(); i++) {
+                pts[i * 2] = ctrlPts.get(i).pos.x;
+                pts[i * 2 + 1] = ctrlPts.get(i).pos.y;
+            }
+        }
+
+        void write(Writer w) throws IOException {
+            w.write("    <link");
+            attr(w, "src", "" + src);
+            attr(w, "targ", "" + targ);
+
+            if (pts.length == 0) {
+                w.write("/>");
+                w.write(NL);
+                return;
+            }
+
+            w.write(">");
+            w.write(NL);
+            for (int i = 0; i < pts.length; i += 2) {
+                w.write("      <ctrlPt");
+                attr(w, "x", "" + pts[i]);
+                attr(w, "y", "" + pts[i + 1]);
+                w.write("/>");
+                w.write(NL);
+            }
+            w.write("    </link>");
+            w.write(NL);
+        }
+    }
 }